@@ -0,0 +1,80 @@
+package com.apica.interview.journalservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Splits database access over two Hikari pools once {@code journal.datasource.replica.url} is set: read-only
+ * transactions (the journal read endpoints) use the replica pool, while ingest, the snapshot and anything else
+ * that writes or needs the latest state use the primary. Each pool is sized on its own, through
+ * {@code spring.datasource.hikari.*} and {@code journal.datasource.replica.hikari.*}, so read traffic can no longer
+ * take the connections the Kafka consumer needs.
+ * <p>
+ * With {@code journal.datasource.read-your-writes-window} above zero, a user's requests keep reading from the
+ * primary for that long after any of their entries was ingested.
+ */
+@Configuration
+@ConditionalOnProperty("journal.datasource.replica.url")
+public class DataSourceRoutingConfig implements WebMvcConfigurer {
+
+    @Value("${journal.datasource.read-your-writes-window}")
+    private Duration readYourWritesWindow;
+
+    @Value("${journal.datasource.read-your-writes-max-users}")
+    private long readYourWritesMaxUsers;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("journal.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(@Value("${journal.datasource.replica.url}") String url,
+                                              @Value("${journal.datasource.replica.username}") String username,
+                                              @Value("${journal.datasource.replica.password}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class)
+                .url(url).username(username).password(password).build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public RecentWriters recentWriters() {
+        return new RecentWriters(readYourWritesWindow, readYourWritesMaxUsers);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (!readYourWritesWindow.isZero()) {
+            registry.addInterceptor(new ReadYourWritesInterceptor(recentWriters()));
+        }
+    }
+}
@@ -1,8 +1,5 @@
 package com.apica.interview.journalservice.config;
 
-import io.jsonwebtoken.JwtException;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -16,12 +13,18 @@ import java.util.Collections;
 
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private final JwtTokenVerifier tokenVerifier;
+
+    public JwtAuthenticationFilter(JwtTokenVerifier tokenVerifier) {
+        this.tokenVerifier = tokenVerifier;
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         String token = extractToken(request);
-        if (token != null && validateToken(token)) {
-            String username = getUsernameFromToken(token);
+        String username = token != null ? tokenVerifier.verify(token) : null;
+        if (username != null) {
             UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(username, null, Collections.emptyList());
             SecurityContextHolder.getContext().setAuthentication(auth);
         }
@@ -35,25 +38,4 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         return null;
     }
-
-    private boolean validateToken(String token) {
-        try {
-            Jwts.parserBuilder()
-                    .setSigningKey(Keys.hmacShaKeyFor("sBv2rCk9YPpK+Kuj5MJKgXbBFO/5bdRUpEHmgXkGR4Q=".getBytes()))
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            return false;
-        }
-    }
-
-    private String getUsernameFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(Keys.hmacShaKeyFor("sBv2rCk9YPpK+Kuj5MJKgXbBFO/5bdRUpEHmgXkGR4Q=".getBytes()))
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package com.apica.interview.journalservice.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies bearer tokens issued by user-service. The parser (and its HMAC key) is built once, and tokens that
+ * verified successfully are remembered by their SHA-256 hash until they expire, so a client repeating the same
+ * token skips the signature check. Hits and misses are published as {@code cache.gets{cache="jwt.verified"}}.
+ */
+@Component
+public class JwtTokenVerifier {
+
+    private static final String SECRET = "sBv2rCk9YPpK+Kuj5MJKgXbBFO/5bdRUpEHmgXkGR4Q=";
+
+    private final JwtParser parser = Jwts.parserBuilder()
+            .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes()))
+            .build();
+
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    public JwtTokenVerifier(@Value("${journal.jwt.verified-cache.max-size}") long maxSize, MeterRegistry meterRegistry) {
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new UntilTokenExpires())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.verified");
+    }
+
+    /**
+     * @return the username the token was issued to, or {@code null} if the token is invalid or expired
+     */
+    public String verify(String token) {
+        String key = hash(token);
+        VerifiedToken verified = verifiedTokens.getIfPresent(key);
+        if (verified != null && verified.expiresAt > System.currentTimeMillis()) {
+            return verified.username;
+        }
+
+        Claims claims;
+        try {
+            claims = parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        Date expiration = claims.getExpiration();
+        if (expiration != null) {
+            verifiedTokens.put(key, new VerifiedToken(claims.getSubject(), expiration.getTime()));
+        }
+        return claims.getSubject();
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class VerifiedToken {
+        private final String username;
+        private final long expiresAt;
+
+        private VerifiedToken(String username, long expiresAt) {
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class UntilTokenExpires implements Expiry<String, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            long remainingMillis = value.expiresAt - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
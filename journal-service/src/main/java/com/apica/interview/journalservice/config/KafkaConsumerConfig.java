@@ -0,0 +1,91 @@
+package com.apica.interview.journalservice.config;
+
+import com.apica.interview.journalservice.event.EventHeaders;
+import com.apica.interview.journalservice.service.PoisonEventHandler;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+@Configuration
+public class KafkaConsumerConfig {
+
+    private static final long DEFAULT_MAX_POLL_INTERVAL_MS = 300_000L;
+
+    private static final byte[] JOURNAL_ENTRY_CREATED = EventHeaders.encode(EventHeaders.JOURNAL_ENTRY_CREATED);
+
+    /**
+     * Boot's default factory (batch mode, concurrency from {@code spring.kafka.listener.*}) plus a filter that
+     * drops any record not typed as a journal entry by its {@code event-type} header, before its payload is
+     * ever decoded.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> kafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory);
+        factory.setRecordFilterStrategy(record -> !isJournalEntry(record));
+        factory.setAckDiscarded(true);
+        return factory;
+    }
+
+    /**
+     * Record-at-a-time containers for the retry topics, which carry few events and are consumed one by one as
+     * each becomes due.
+     * <p>
+     * {@link com.apica.interview.journalservice.service.JournalRetryListener} waits for each record on the
+     * consumer thread, so these consumers fetch a single record per poll and allow a poll interval longer than the
+     * longest backoff step. Without that, waits adding up across one poll would get the consumer evicted from its
+     * group and the same records redelivered.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> retryListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory,
+            @Value("${journal.retry.backoff}") List<Duration> backoff) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory);
+        factory.setBatchListener(false);
+        factory.setConcurrency(1);
+        long longestWait = 0;
+        for (Duration step : backoff) {
+            longestWait = Math.max(longestWait, step.toMillis());
+        }
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "1");
+        consumerProperties.setProperty(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG,
+                String.valueOf(longestWait + DEFAULT_MAX_POLL_INTERVAL_MS));
+        factory.getContainerProperties().setKafkaConsumerProperties(consumerProperties);
+        return factory;
+    }
+
+    @Bean
+    public KafkaAdmin.NewTopics poisonEventTopics(PoisonEventHandler poisonEventHandler) {
+        List<NewTopic> topics = new ArrayList<>();
+        for (String retryTopic : poisonEventHandler.retryTopics()) {
+            topics.add(TopicBuilder.name(retryTopic).partitions(1).build());
+        }
+        topics.add(TopicBuilder.name(PoisonEventHandler.DEAD_LETTER_TOPIC).partitions(1).build());
+        return new KafkaAdmin.NewTopics(topics.toArray(new NewTopic[0]));
+    }
+
+    private static boolean isJournalEntry(ConsumerRecord<?, ?> record) {
+        Header type = record.headers().lastHeader(EventHeaders.TYPE);
+        return type != null && Arrays.equals(type.value(), JOURNAL_ENTRY_CREATED);
+    }
+}
@@ -0,0 +1,50 @@
+package com.apica.interview.journalservice.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends connections for read-only transactions to the replica pool and everything else to the primary. The key is
+ * read when a connection is first used, so this must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: transaction managers open their
+ * connection before the transaction's read-only flag is visible here.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    private static final ThreadLocal<Boolean> PRIMARY_PREFERRED = new ThreadLocal<>();
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        targets.put(REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Keeps read-only transactions on this thread on the primary until {@link #clearPreference()}, for a caller
+     * that must see its own recent writes.
+     */
+    public static void preferPrimary() {
+        PRIMARY_PREFERRED.set(Boolean.TRUE);
+    }
+
+    public static void clearPreference() {
+        PRIMARY_PREFERRED.remove();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && PRIMARY_PREFERRED.get() == null) {
+            return REPLICA;
+        }
+        return PRIMARY;
+    }
+}
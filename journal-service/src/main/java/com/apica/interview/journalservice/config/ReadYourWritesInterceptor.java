@@ -0,0 +1,42 @@
+package com.apica.interview.journalservice.config;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Pins a request's reads to the primary if its user has written recently. The preference is held by the request
+ * thread, so it is cleared when that thread lets go of the request: on completion, or when an async request (a
+ * journal stream, say) hands off to another thread, which skips {@code afterCompletion}.
+ */
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+
+    private final RecentWriters recentWriters;
+
+    public ReadYourWritesInterceptor(RecentWriters recentWriters) {
+        this.recentWriters = recentWriters;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof String
+                && recentWriters.wroteRecently((String) authentication.getPrincipal())) {
+            ReadWriteRoutingDataSource.preferPrimary();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReadWriteRoutingDataSource.clearPreference();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReadWriteRoutingDataSource.clearPreference();
+    }
+}
@@ -0,0 +1,39 @@
+package com.apica.interview.journalservice.config;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.service.JournalEntriesPersistedEvent;
+import com.apica.interview.journalservice.service.JournalVersions;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+
+/**
+ * Users whose entries were committed within the last {@code journal.datasource.read-your-writes-window}, whose
+ * reads therefore stay on the primary until the replica has had time to catch up.
+ */
+public class RecentWriters {
+
+    private final Cache<String, Boolean> writers;
+
+    public RecentWriters(Duration window, long maxSize) {
+        this.writers = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    @TransactionalEventListener
+    @Order(JournalVersions.READ_STATE_ORDER)
+    public void onEntriesPersisted(JournalEntriesPersistedEvent event) {
+        for (JournalEntry entry : event.getEntries()) {
+            writers.put(entry.getUsername(), Boolean.TRUE);
+        }
+    }
+
+    public boolean wroteRecently(String username) {
+        return writers.getIfPresent(username) != null;
+    }
+}
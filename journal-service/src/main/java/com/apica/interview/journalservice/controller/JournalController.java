@@ -1,17 +1,36 @@
 package com.apica.interview.journalservice.controller;
 
-import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.ActivityStats;
+import com.apica.interview.journalservice.model.JournalCursor;
+import com.apica.interview.journalservice.model.JournalPage;
+import com.apica.interview.journalservice.model.JournalSearchPage;
+import com.apica.interview.journalservice.model.JournalSummaryPage;
 import com.apica.interview.journalservice.service.JournalService;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
+import com.apica.interview.journalservice.service.JournalStreamHub;
+import com.apica.interview.journalservice.service.JournalVersions;
+import com.apica.interview.journalservice.service.UserActivityService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.List;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Locale;
 
 @RestController
 @RequestMapping("/api/journals")
@@ -19,21 +38,163 @@ public class JournalController {
     @Autowired
     private JournalService journalService;
 
+    @Autowired
+    private UserActivityService userActivityService;
+
+    @Autowired
+    private JournalVersions journalVersions;
+
+    @Autowired
+    private JournalStreamHub journalStreamHub;
+
+    @Value("${journal.page.default-size}")
+    private int defaultPageSize;
+
+    @Value("${journal.page.max-size}")
+    private int maxPageSize;
+
+    @Value("${journal.stats.default-range-days}")
+    private int defaultStatsRangeDays;
+
+    @Value("${journal.stats.max-range-days}")
+    private int maxStatsRangeDays;
+
+    /**
+     * Answers {@code If-None-Match} with a 304 from the user's {@link JournalVersions} ETag alone, before anything
+     * is read, so polling an unchanged journal costs no query and no serialization.
+     */
     @GetMapping
-    public ResponseEntity<List<JournalEntry>> getEntries(@RequestHeader("Authorization") String token) {
-        String username = getUsernameFromToken(token);
-        List<JournalEntry> entries = journalService.getEntriesForUser(username);
-        return ResponseEntity.ok(entries);
-    }
-
-    private String getUsernameFromToken(String token) {
-        // Remove "Bearer " prefix
-        token = token.substring(7);
-        return Jwts.parserBuilder()
-                .setSigningKey(Keys.hmacShaKeyFor("sBv2rCk9YPpK+Kuj5MJKgXbBFO/5bdRUpEHmgXkGR4Q=".getBytes()))
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
-    }
-}
\ No newline at end of file
+    public ResponseEntity<JournalPage> getEntries(@AuthenticationPrincipal String username,
+                                                  @RequestParam(required = false) String cursor,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                                                  @RequestParam(required = false) Integer limit,
+                                                  ServletWebRequest request) {
+        JournalCursor parsedCursor = parseCursor(cursor);
+        int resolvedLimit = resolveLimit(limit);
+        if (notModified(username, request)) {
+            return null;
+        }
+        JournalPage page = journalService.getEntriesPage(username, from, to, parsedCursor, resolvedLimit);
+        return revalidated(page);
+    }
+
+    /**
+     * The same pages as {@link #getEntries}, with each entry's content length instead of its content.
+     */
+    @GetMapping("/summary")
+    public ResponseEntity<JournalSummaryPage> getSummaries(@AuthenticationPrincipal String username,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                                                           @RequestParam(required = false) Integer limit,
+                                                           ServletWebRequest request) {
+        JournalCursor parsedCursor = parseCursor(cursor);
+        int resolvedLimit = resolveLimit(limit);
+        if (notModified(username, request)) {
+            return null;
+        }
+        return revalidated(journalService.getSummaryPage(username, from, to, parsedCursor, resolvedLimit));
+    }
+
+    /**
+     * Server-Sent Events of the user's entries as they are committed, {@code entry} events with the entry as JSON.
+     * Only new entries are sent; a client reads the journal as usual when it (re)connects.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@AuthenticationPrincipal String username) {
+        return journalStreamHub.subscribe(username);
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<JournalSearchPage> search(@AuthenticationPrincipal String username,
+                                                    @RequestParam String q,
+                                                    @RequestParam(defaultValue = "0") int offset,
+                                                    @RequestParam(required = false) Integer limit,
+                                                    ServletWebRequest request) {
+        if (q.trim().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "q must not be blank");
+        }
+        if (offset < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "offset must not be negative");
+        }
+        int resolvedLimit = resolveLimit(limit);
+        if (notModified(username, request)) {
+            return null;
+        }
+        return revalidated(journalService.searchEntries(username, q, offset, resolvedLimit));
+    }
+
+    /**
+     * Entry counts and content sizes per UTC day or ISO week, for {@code from} to {@code to} inclusive. Without
+     * bounds, the last {@code journal.stats.default-range-days} days up to today.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<ActivityStats> getStats(@AuthenticationPrincipal String username,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                  @RequestParam(defaultValue = "day") String granularity) {
+        LocalDate last = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate first = from != null ? from : last.minusDays(defaultStatsRangeDays - 1);
+        if (first.isAfter(last)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to");
+        }
+        if (ChronoUnit.DAYS.between(first, last) >= maxStatsRangeDays) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "range must not be longer than " + maxStatsRangeDays + " days");
+        }
+        return ResponseEntity.ok(userActivityService.getStats(username, first, last, parseGranularity(granularity)));
+    }
+
+    /**
+     * Whether the client's {@code If-None-Match} still matches the user's journal, in which case the response is
+     * already a 304. {@code Vary: Authorization} goes on the 304 as well as the full response, so a shared cache
+     * never answers one user's request with another's body.
+     */
+    private boolean notModified(String username, ServletWebRequest request) {
+        if (request.getResponse() != null) {
+            request.getResponse().addHeader(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION);
+        }
+        return request.checkNotModified(journalVersions.etagFor(username));
+    }
+
+    /**
+     * Lets clients keep the body, but only reuse it after checking its ETag; the ETag header itself was set by
+     * {@link ServletWebRequest#checkNotModified(String)}.
+     */
+    private static <T> ResponseEntity<T> revalidated(T body) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .varyBy(HttpHeaders.AUTHORIZATION)
+                .body(body);
+    }
+
+    private static ActivityStats.Granularity parseGranularity(String granularity) {
+        try {
+            return ActivityStats.Granularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "granularity must be day or week");
+        }
+    }
+
+    private JournalCursor parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return JournalCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private int resolveLimit(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        return Math.min(limit, maxPageSize);
+    }
+}
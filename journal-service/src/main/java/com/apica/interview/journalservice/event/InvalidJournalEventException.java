@@ -0,0 +1,12 @@
+package com.apica.interview.journalservice.event;
+
+public class InvalidJournalEventException extends RuntimeException {
+
+    public InvalidJournalEventException(String message) {
+        super(message);
+    }
+
+    public InvalidJournalEventException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,89 @@
+package com.apica.interview.journalservice.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class ActivityStats {
+    public enum Granularity {
+        DAY, WEEK
+    }
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final Granularity granularity;
+    private final List<Bucket> buckets;
+    private final long totalEntries;
+    private final long totalContentChars;
+
+    public ActivityStats(LocalDate from, LocalDate to, Granularity granularity, List<Bucket> buckets) {
+        this.from = from;
+        this.to = to;
+        this.granularity = granularity;
+        this.buckets = buckets;
+        long entries = 0;
+        long chars = 0;
+        for (Bucket bucket : buckets) {
+            entries += bucket.entries;
+            chars += bucket.contentChars;
+        }
+        this.totalEntries = entries;
+        this.totalContentChars = chars;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    /**
+     * Last day of the range, inclusive.
+     */
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public Granularity getGranularity() {
+        return granularity;
+    }
+
+    /**
+     * Buckets with at least one entry, oldest first; days are UTC and weeks start on Monday.
+     */
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    public long getTotalEntries() {
+        return totalEntries;
+    }
+
+    public long getTotalContentChars() {
+        return totalContentChars;
+    }
+
+    public static class Bucket {
+        private final LocalDate start;
+        private long entries;
+        private long contentChars;
+
+        public Bucket(LocalDate start) {
+            this.start = start;
+        }
+
+        public void add(long entries, long contentChars) {
+            this.entries += entries;
+            this.contentChars += contentChars;
+        }
+
+        public LocalDate getStart() {
+            return start;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public long getContentChars() {
+            return contentChars;
+        }
+    }
+}
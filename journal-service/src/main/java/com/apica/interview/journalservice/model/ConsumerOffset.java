@@ -0,0 +1,68 @@
+package com.apica.interview.journalservice.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Next Kafka offset to consume for a topic partition, written in the same transaction as the entries it covers so
+ * the database (and any snapshot of it) always knows exactly where ingestion has to resume.
+ */
+@Entity
+@Table(name = "consumer_offsets")
+public class ConsumerOffset {
+    @Id
+    private String id;
+    private String topic;
+    @Column(name = "partition_id")
+    private int partition;
+    @Column(name = "next_offset")
+    private long nextOffset;
+
+    public ConsumerOffset() {
+    }
+
+    public ConsumerOffset(String topic, int partition, long nextOffset) {
+        this.id = idFor(topic, partition);
+        this.topic = topic;
+        this.partition = partition;
+        this.nextOffset = nextOffset;
+    }
+
+    public static String idFor(String topic, int partition) {
+        return topic + "-" + partition;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public void setPartition(int partition) {
+        this.partition = partition;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public void setNextOffset(long nextOffset) {
+        this.nextOffset = nextOffset;
+    }
+}
@@ -0,0 +1,72 @@
+package com.apica.interview.journalservice.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodings of {@code journal_entries.content}, recorded per row in {@code content_encoding} so the threshold can
+ * change, or a new encoding be added, without rewriting existing rows.
+ */
+public final class ContentCompression {
+
+    /**
+     * Plain text in {@code content}.
+     */
+    public static final byte PLAIN = 0;
+
+    /**
+     * Raw Deflate of the UTF-8 text in {@code content_deflated}.
+     */
+    public static final byte DEFLATE = 1;
+
+    private ContentCompression() {
+    }
+
+    public static byte[] deflate(String content) {
+        byte[] input = content.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String inflate(byte[] deflated) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(deflated.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed journal content");
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed journal content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Content as stored in a row, whichever column holds it.
+     */
+    public static String decode(byte encoding, String content, byte[] deflated) {
+        return encoding == DEFLATE ? inflate(deflated) : content;
+    }
+}
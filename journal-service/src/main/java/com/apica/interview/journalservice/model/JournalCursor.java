@@ -0,0 +1,45 @@
+package com.apica.interview.journalservice.model;
+
+import java.util.Date;
+
+/**
+ * Keyset position in a user's newest-first entry list: the next page starts strictly after the entry with this
+ * {@code (createdAt, id)}. Serialized as an opaque {@code <createdAtMillis>_<id>} token.
+ */
+public class JournalCursor {
+    private final long createdAt;
+    private final long id;
+
+    public JournalCursor(long createdAt, long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public static JournalCursor after(JournalEntry entry) {
+        return new JournalCursor(entry.getCreatedAt().getTime(), entry.getId());
+    }
+
+    public static JournalCursor decode(String value) {
+        int separator = value.indexOf('_');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        try {
+            return new JournalCursor(Long.parseLong(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + value, e);
+        }
+    }
+
+    public String encode() {
+        return createdAt + "_" + id;
+    }
+
+    public Date getCreatedAt() {
+        return new Date(createdAt);
+    }
+
+    public long getId() {
+        return id;
+    }
+}
@@ -1,16 +1,36 @@
 package com.apica.interview.journalservice.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 
 @Entity
-@Table(name = "journal_entries")
+@Table(name = "journal_entries",
+        indexes = @Index(name = "idx_journal_entries_user_created", columnList = "username, created_at, id"))
 public class JournalEntry {
+    /**
+     * Longest content, in UTF-8 bytes, that may be stored uncompressed; {@code journal.content.compress-above-bytes}
+     * cannot be set higher.
+     */
+    public static final int MAX_PLAIN_CONTENT_BYTES = 4096;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "journal_entries_seq")
+    @SequenceGenerator(name = "journal_entries_seq", sequenceName = "journal_entries_seq", allocationSize = 100)
     private Long id;
     private String username;
+    @Column(name = "content", length = MAX_PLAIN_CONTENT_BYTES)
     private String content;
+    @Lob
+    @Column(name = "content_deflated")
+    private byte[] deflatedContent;
+    @Column(name = "content_encoding", nullable = false)
+    private byte contentEncoding = ContentCompression.PLAIN;
+    @Column(name = "content_length", nullable = false)
+    private int contentLength;
+    @Column(name = "created_at")
     private Date createdAt;
 
     public Long getId() {
@@ -29,12 +49,75 @@ public class JournalEntry {
         this.username = username;
     }
 
+    /**
+     * The text of the entry. Compressed content is inflated on every call and never kept in its expanded form,
+     * so entries held in caches stay small.
+     */
     public String getContent() {
-        return content;
+        return ContentCompression.decode(contentEncoding, content, deflatedContent);
     }
 
     public void setContent(String content) {
         this.content = content;
+        this.deflatedContent = null;
+        this.contentEncoding = ContentCompression.PLAIN;
+        this.contentLength = content != null ? content.length() : 0;
+    }
+
+    /**
+     * Sets content that is already deflated, as read back from storage, without inflating it.
+     */
+    public void setDeflatedContent(byte[] deflatedContent, int contentLength) {
+        this.content = null;
+        this.deflatedContent = deflatedContent;
+        this.contentEncoding = ContentCompression.DEFLATE;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * The deflated content, or {@code null} unless {@link #isContentCompressed()}.
+     */
+    @JsonIgnore
+    public byte[] getDeflatedContent() {
+        return deflatedContent;
+    }
+
+    /**
+     * Switches to Deflate storage if the content is longer than {@code thresholdBytes} in UTF-8.
+     */
+    public void compressContentAbove(int thresholdBytes) {
+        // No char takes more than three UTF-8 bytes, so short content skips the encoding step.
+        if (contentEncoding == ContentCompression.PLAIN && content != null
+                && content.length() > thresholdBytes / 3
+                && content.getBytes(StandardCharsets.UTF_8).length > thresholdBytes) {
+            deflatedContent = ContentCompression.deflate(content);
+            content = null;
+            contentEncoding = ContentCompression.DEFLATE;
+        }
+    }
+
+    @JsonIgnore
+    public boolean isContentCompressed() {
+        return contentEncoding == ContentCompression.DEFLATE;
+    }
+
+    /**
+     * Approximate bytes the content takes in the row: UTF-16 for plain text, the deflated size otherwise.
+     */
+    @JsonIgnore
+    public int getStoredContentBytes() {
+        if (contentEncoding == ContentCompression.DEFLATE) {
+            return deflatedContent.length;
+        }
+        return content != null ? 2 * content.length() : 0;
+    }
+
+    /**
+     * Length of the content in chars, known without inflating it.
+     */
+    @JsonIgnore
+    public int getContentLength() {
+        return contentLength;
     }
 
     public Date getCreatedAt() {
@@ -44,4 +127,4 @@ public class JournalEntry {
     public void setCreatedAt(Date createdAt) {
         this.createdAt = createdAt;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package com.apica.interview.journalservice.model;
+
+import java.util.Date;
+
+/**
+ * An entry without its content, for list views that only show metadata. Queried as a projection, so the content
+ * columns are never read.
+ */
+public interface JournalEntrySummary {
+    Long getId();
+
+    String getUsername();
+
+    Date getCreatedAt();
+
+    /**
+     * Length of the content in chars.
+     */
+    int getContentLength();
+}
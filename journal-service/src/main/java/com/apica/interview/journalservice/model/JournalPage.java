@@ -0,0 +1,24 @@
+package com.apica.interview.journalservice.model;
+
+import java.util.List;
+
+public class JournalPage {
+    private final List<JournalEntry> entries;
+    private final String nextCursor;
+
+    public JournalPage(List<JournalEntry> entries, String nextCursor) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<JournalEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Cursor for the following page, or {@code null} if this is the last one.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
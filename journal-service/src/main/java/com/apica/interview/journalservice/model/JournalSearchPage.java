@@ -0,0 +1,33 @@
+package com.apica.interview.journalservice.model;
+
+import java.util.List;
+
+public class JournalSearchPage {
+    private final List<JournalEntry> entries;
+    private final int totalHits;
+    private final Integer nextOffset;
+
+    public JournalSearchPage(List<JournalEntry> entries, int totalHits, Integer nextOffset) {
+        this.entries = entries;
+        this.totalHits = totalHits;
+        this.nextOffset = nextOffset;
+    }
+
+    /**
+     * Matching entries, best match first.
+     */
+    public List<JournalEntry> getEntries() {
+        return entries;
+    }
+
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * Offset of the following page, or {@code null} if this is the last one.
+     */
+    public Integer getNextOffset() {
+        return nextOffset;
+    }
+}
@@ -0,0 +1,24 @@
+package com.apica.interview.journalservice.model;
+
+import java.util.List;
+
+public class JournalSummaryPage {
+    private final List<JournalEntrySummary> entries;
+    private final String nextCursor;
+
+    public JournalSummaryPage(List<JournalEntrySummary> entries, String nextCursor) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<JournalEntrySummary> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Cursor for the following page, or {@code null} if this is the last one.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
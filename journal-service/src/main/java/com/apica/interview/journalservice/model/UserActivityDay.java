@@ -0,0 +1,96 @@
+package com.apica.interview.journalservice.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running totals of the entries a user created on one UTC day, kept up to date by the consumer in the same
+ * transaction as the entries themselves, so activity stats never have to scan {@code journal_entries}.
+ */
+@Entity
+@Table(name = "user_activity_days",
+        indexes = @Index(name = "idx_user_activity_days_user_day", columnList = "username, epoch_day"))
+public class UserActivityDay {
+    @Id
+    private String id;
+    private String username;
+    @Column(name = "epoch_day", nullable = false)
+    private long epochDay;
+    @Column(name = "entry_count", nullable = false)
+    private long entryCount;
+    @Column(name = "content_chars", nullable = false)
+    private long contentChars;
+
+    public UserActivityDay() {
+    }
+
+    public UserActivityDay(String username, long epochDay) {
+        this.id = idFor(username, epochDay);
+        this.username = username;
+        this.epochDay = epochDay;
+    }
+
+    public static String idFor(String username, long epochDay) {
+        return epochDay + ":" + username;
+    }
+
+    /**
+     * The UTC day {@code createdAt} falls on, as days since 1970-01-01.
+     */
+    public static long epochDayOf(Date createdAt) {
+        return Math.floorDiv(createdAt.getTime(), TimeUnit.DAYS.toMillis(1));
+    }
+
+    public void add(long entries, long chars) {
+        entryCount += entries;
+        contentChars += chars;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    public void setEpochDay(long epochDay) {
+        this.epochDay = epochDay;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(long entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Total content length, in characters, of the day's entries.
+     */
+    public long getContentChars() {
+        return contentChars;
+    }
+
+    public void setContentChars(long contentChars) {
+        this.contentChars = contentChars;
+    }
+}
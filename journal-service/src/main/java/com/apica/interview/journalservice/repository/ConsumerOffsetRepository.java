@@ -0,0 +1,9 @@
+package com.apica.interview.journalservice.repository;
+
+import com.apica.interview.journalservice.model.ConsumerOffset;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ConsumerOffsetRepository extends JpaRepository<ConsumerOffset, String> {
+}
@@ -1,12 +1,44 @@
 package com.apica.interview.journalservice.repository;
 
 import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.JournalEntrySummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.List;
 
 @Repository
 public interface JournalEntryRepository extends JpaRepository<JournalEntry, Long> {
     List<JournalEntry> findByUsername(String username);
+
+    /**
+     * Newest-first page of a user's entries created at or after {@code from} that sort strictly before the
+     * {@code (beforeCreatedAt, beforeId)} keyset. Served by the {@code (username, created_at, id)} index, so the
+     * cost of a page does not depend on how much history the user has.
+     */
+    @Query("select e from JournalEntry e where e.username = :username and e.createdAt >= :from"
+            + " and (e.createdAt < :beforeCreatedAt or (e.createdAt = :beforeCreatedAt and e.id < :beforeId))"
+            + " order by e.createdAt desc, e.id desc")
+    List<JournalEntry> findPageBefore(@Param("username") String username,
+                                      @Param("from") Date from,
+                                      @Param("beforeCreatedAt") Date beforeCreatedAt,
+                                      @Param("beforeId") long beforeId,
+                                      Pageable pageable);
+
+    /**
+     * {@link #findPageBefore} without the content columns.
+     */
+    @Query("select e.id as id, e.username as username, e.createdAt as createdAt, e.contentLength as contentLength"
+            + " from JournalEntry e where e.username = :username and e.createdAt >= :from"
+            + " and (e.createdAt < :beforeCreatedAt or (e.createdAt = :beforeCreatedAt and e.id < :beforeId))"
+            + " order by e.createdAt desc, e.id desc")
+    List<JournalEntrySummary> findSummaryPageBefore(@Param("username") String username,
+                                                    @Param("from") Date from,
+                                                    @Param("beforeCreatedAt") Date beforeCreatedAt,
+                                                    @Param("beforeId") long beforeId,
+                                                    Pageable pageable);
 }
@@ -0,0 +1,29 @@
+package com.apica.interview.journalservice.repository;
+
+import com.apica.interview.journalservice.model.UserActivityDay;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface UserActivityDayRepository extends JpaRepository<UserActivityDay, String> {
+
+    /**
+     * The user's non-empty days in {@code [fromDay, toDay]}, oldest first. Served by the
+     * {@code (username, epoch_day)} index.
+     */
+    List<UserActivityDay> findByUsernameAndEpochDayBetweenOrderByEpochDay(String username, long fromDay, long toDay);
+
+    /**
+     * Adds to an existing day in place, so concurrent writers to the same day cannot lose each other's counts.
+     * Returns 0 if the day has no row yet.
+     */
+    @Modifying
+    @Query("update UserActivityDay d set d.entryCount = d.entryCount + :entries,"
+            + " d.contentChars = d.contentChars + :chars where d.id = :id")
+    int increment(@Param("id") String id, @Param("entries") long entries, @Param("chars") long chars);
+}
@@ -0,0 +1,148 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.ContentCompression;
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.store.JournalArchive;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@code journal.archive.interval}, moves entries created more than {@code journal.archive.min-age} ago out of
+ * {@code journal_entries} and into the {@link JournalArchive}, at most {@code journal.archive.max-entries-per-run}
+ * at a time. A min-age of zero turns archiving off.
+ * <p>
+ * Rows are only deleted once the run's segments are committed, and a run only takes entries up to the highest id
+ * of the last snapshot, whose offsets make sure Kafka never replays them into the table again.
+ */
+@Service
+@ConditionalOnProperty(name = "journal.store.type", havingValue = "jpa", matchIfMissing = true)
+public class JournalArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalArchiver.class);
+
+    static final int SEGMENT_MAX_ENTRIES = 8192;
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JournalArchive archive;
+    private final JournalSnapshotService snapshotService;
+    private final Duration minAge;
+    private final int maxEntriesPerRun;
+    private final Timer runTimer;
+
+    public JournalArchiver(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           JournalArchive archive,
+                           JournalSnapshotService snapshotService,
+                           @Value("${journal.archive.min-age}") Duration minAge,
+                           @Value("${journal.archive.max-entries-per-run}") int maxEntriesPerRun,
+                           MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.archive = archive;
+        this.snapshotService = snapshotService;
+        this.minAge = minAge;
+        this.maxEntriesPerRun = maxEntriesPerRun;
+        this.runTimer = Timer.builder("journal.archive.run")
+                .description("Time to move a run of old entries into the journal archive")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${journal.archive.interval}", fixedDelayString = "${journal.archive.interval}")
+    public void scheduledArchive() throws IOException {
+        if (!minAge.isZero()) {
+            archiveOlderThan(new Date(System.currentTimeMillis() - minAge.toMillis()));
+        }
+    }
+
+    /**
+     * Archives up to {@code journal.archive.max-entries-per-run} entries created before {@code cutoff}.
+     *
+     * @return how many rows were moved out of the table
+     */
+    public synchronized int archiveOlderThan(Date cutoff) throws IOException {
+        long maxId = snapshotService.getLastSnapshotMaxId();
+        if (maxId == 0) {
+            return 0;
+        }
+        long started = System.nanoTime();
+        JournalArchive.Run run = archive.startRun();
+        List<Object[]> archivedIds = new ArrayList<>();
+        try {
+            List<JournalEntry> userEntries = new ArrayList<>();
+            jdbcTemplate.query("select id, username, created_at, content_encoding, content_length, content, content_deflated"
+                    + " from journal_entries where created_at < ? and id <= ? order by username, created_at, id limit ?",
+                    (RowCallbackHandler) rs -> {
+                        JournalEntry entry = new JournalEntry();
+                        entry.setId(rs.getLong(1));
+                        entry.setUsername(rs.getString(2));
+                        entry.setCreatedAt(new Date(rs.getTimestamp(3).getTime()));
+                        if (rs.getByte(4) == ContentCompression.DEFLATE) {
+                            entry.setDeflatedContent(rs.getBytes(7), rs.getInt(5));
+                        } else {
+                            entry.setContent(rs.getString(6));
+                        }
+                        archivedIds.add(new Object[]{entry.getId()});
+                        // Left behind by a run whose deletes failed; only the row still has to go.
+                        if (archive.contains(entry.getUsername(), entry.getId(), entry.getCreatedAt())) {
+                            return;
+                        }
+                        if (!userEntries.isEmpty() && (!userEntries.get(0).getUsername().equals(entry.getUsername())
+                                || userEntries.size() == SEGMENT_MAX_ENTRIES)) {
+                            writeSegment(run, userEntries);
+                        }
+                        userEntries.add(entry);
+                    }, new Timestamp(cutoff.getTime()), maxId, maxEntriesPerRun);
+            writeSegment(run, userEntries);
+            if (run.getEntryCount() > 0) {
+                run.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            run.abort();
+            throw e;
+        }
+
+        for (int i = 0; i < archivedIds.size(); i += DELETE_BATCH_SIZE) {
+            List<Object[]> batch = archivedIds.subList(i, Math.min(archivedIds.size(), i + DELETE_BATCH_SIZE));
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate("delete from journal_entries where id = ?", batch));
+        }
+        runTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (!archivedIds.isEmpty()) {
+            log.info("Archived {} journal entries created before {}", run.getEntryCount(), new Timestamp(cutoff.getTime()));
+        }
+        return archivedIds.size();
+    }
+
+    private static void writeSegment(JournalArchive.Run run, List<JournalEntry> userEntries) {
+        if (userEntries.isEmpty()) {
+            return;
+        }
+        try {
+            run.write(userEntries.get(0).getUsername(), userEntries);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        userEntries.clear();
+    }
+}
@@ -0,0 +1,21 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+
+import java.util.List;
+
+/**
+ * Published by the Kafka consumer for each batch it persists. Listeners that keep derived state should use
+ * {@code @TransactionalEventListener} so they only see entries whose transaction actually committed.
+ */
+public class JournalEntriesPersistedEvent {
+    private final List<JournalEntry> entries;
+
+    public JournalEntriesPersistedEvent(List<JournalEntry> entries) {
+        this.entries = entries;
+    }
+
+    public List<JournalEntry> getEntries() {
+        return entries;
+    }
+}
@@ -0,0 +1,51 @@
+package com.apica.interview.journalservice.service;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Feeds events back from the {@code journal-events-retry-<n>} topics once their backoff has passed. Every record
+ * on one retry topic was delayed by the same amount, so they become due in offset order and waiting for the head
+ * of a partition never delays anything that is already due. This runs on its own consumer group and containers,
+ * so the wait never holds up {@code journal-events}. Its containers poll one record at a time (see
+ * {@code KafkaConsumerConfig#retryListenerContainerFactory}), so a wait never outlasts the poll interval.
+ */
+@Component
+public class JournalRetryListener implements ConsumerSeekAware {
+
+    @Autowired
+    private JournalService journalService;
+
+    @Autowired
+    private PoisonEventHandler poisonEventHandler;
+
+    public List<String> getRetryTopics() {
+        return poisonEventHandler.retryTopics();
+    }
+
+    @KafkaListener(topics = "#{__listener.retryTopics}", groupId = "journal-retry-group",
+            containerFactory = "retryListenerContainerFactory")
+    public void consumeRetry(ConsumerRecord<String, String> record) throws InterruptedException {
+        long wait = PoisonEventHandler.notBefore(record) - System.currentTimeMillis();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+        journalService.consumeRetriedEvent(record);
+    }
+
+    /**
+     * Retried entries are stored with their retry topic offsets (see {@link JournalService#consumeRetriedEvent}),
+     * so these partitions resume from the store as well.
+     */
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        journalService.onPartitionsAssigned(assignments, callback);
+    }
+}
@@ -0,0 +1,264 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.store.JournalStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory inverted index over journal content, one per user, ranked with BM25.
+ * <p>
+ * Each user's entries are numbered in the order they were indexed. A term's postings are a single byte array of
+ * varint pairs {@code (doc number delta, term frequency)}, so a posting usually takes two bytes. Entry ids and
+ * lengths are kept in primitive arrays indexed by doc number.
+ * <p>
+ * The index is rebuilt from the {@link JournalStore} at startup, after any snapshot has been restored, and extended
+ * with every batch the consumer commits. The heap held by postings is published as
+ * {@code journal.search.index.bytes}.
+ */
+@Component
+public class JournalSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalSearchIndex.class);
+
+    static final int MAX_TERM_LENGTH = 64;
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final JournalStore journalStore;
+    private final Map<String, UserIndex> indexes = new ConcurrentHashMap<>();
+    private final AtomicLong indexBytes = new AtomicLong();
+
+    public JournalSearchIndex(JournalStore journalStore, MeterRegistry meterRegistry) {
+        this.journalStore = journalStore;
+        Gauge.builder("journal.search.index.bytes", indexBytes, AtomicLong::get)
+                .description("Heap held by search postings and per-entry arrays")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long started = System.currentTimeMillis();
+        long[] count = new long[1];
+        journalStore.forEach(entry -> {
+            add(entry.getUsername(), entry.getId(), entry.getContent());
+            count[0]++;
+        });
+        log.info("Search index rebuilt: {} entries in {} ms", count[0], System.currentTimeMillis() - started);
+    }
+
+    @TransactionalEventListener
+    @Order(JournalVersions.READ_STATE_ORDER)
+    public void onEntriesPersisted(JournalEntriesPersistedEvent event) {
+        for (JournalEntry entry : event.getEntries()) {
+            add(entry.getUsername(), entry.getId(), entry.getContent());
+        }
+    }
+
+    /**
+     * Ids of the user's entries matching any term of {@code query}, best first; ties go to the newer entry.
+     */
+    public SearchHits search(String username, String query, int offset, int limit) {
+        UserIndex index = indexes.get(username);
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (index == null || terms.isEmpty()) {
+            return new SearchHits(new long[0], 0);
+        }
+        return index.search(terms, offset, limit);
+    }
+
+    private void add(String username, long entryId, String content) {
+        UserIndex index = indexes.computeIfAbsent(username, key -> new UserIndex());
+        indexBytes.addAndGet(index.add(entryId, tokenize(content)));
+    }
+
+    /**
+     * Lower-cased runs of letters and digits, each cut to {@link #MAX_TERM_LENGTH} chars.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (token.length() < MAX_TERM_LENGTH) {
+                    token.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    public static final class SearchHits {
+        private final long[] entryIds;
+        private final int totalHits;
+
+        SearchHits(long[] entryIds, int totalHits) {
+            this.entryIds = entryIds;
+            this.totalHits = totalHits;
+        }
+
+        public long[] getEntryIds() {
+            return entryIds;
+        }
+
+        public int getTotalHits() {
+            return totalHits;
+        }
+    }
+
+    private static final class UserIndex {
+        private final Map<String, Postings> postings = new HashMap<>();
+        private long[] entryIds = new long[8];
+        private int[] lengths = new int[8];
+        private int docCount;
+        private long totalLength;
+
+        /**
+         * @return bytes of heap newly allocated
+         */
+        synchronized long add(long entryId, List<String> tokens) {
+            long grown = 0;
+            if (docCount == entryIds.length) {
+                int capacity = docCount * 2;
+                entryIds = Arrays.copyOf(entryIds, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                grown += 12L * docCount;
+            }
+            int doc = docCount++;
+            entryIds[doc] = entryId;
+            lengths[doc] = tokens.size();
+            totalLength += tokens.size();
+
+            Map<String, int[]> frequencies = new HashMap<>();
+            for (String token : tokens) {
+                frequencies.computeIfAbsent(token, key -> new int[1])[0]++;
+            }
+            for (Map.Entry<String, int[]> term : frequencies.entrySet()) {
+                Postings list = postings.get(term.getKey());
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(term.getKey(), list);
+                    // Map entry, key string and the postings object itself.
+                    grown += 96 + 2L * term.getKey().length();
+                }
+                grown += list.add(doc, term.getValue()[0]);
+            }
+            return grown;
+        }
+
+        synchronized SearchHits search(Set<String> terms, int offset, int limit) {
+            float averageLength = docCount == 0 ? 0 : (float) totalLength / docCount;
+            float[] scores = new float[docCount];
+            int matched = 0;
+            for (String term : terms) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (docCount - list.docFrequency + 0.5) / (list.docFrequency + 0.5));
+                int position = 0;
+                int doc = -1;
+                for (int i = 0; i < list.docFrequency; i++) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = list.data[position++];
+                        delta |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    int frequency = 0;
+                    shift = 0;
+                    do {
+                        b = list.data[position++];
+                        frequency |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    doc += delta;
+                    if (scores[doc] == 0) {
+                        matched++;
+                    }
+                    float norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                    scores[doc] += (float) (idf * frequency * (K1 + 1) / (frequency + norm));
+                }
+            }
+
+            Integer[] hits = new Integer[matched];
+            int n = 0;
+            for (int doc = 0; doc < docCount; doc++) {
+                if (scores[doc] > 0) {
+                    hits[n++] = doc;
+                }
+            }
+            Arrays.sort(hits, (a, b) -> scores[a] != scores[b] ? Float.compare(scores[b], scores[a]) : Integer.compare(b, a));
+            int from = Math.min(offset, matched);
+            int to = Math.min(matched, from + limit);
+            long[] page = new long[to - from];
+            for (int i = from; i < to; i++) {
+                page[i - from] = entryIds[hits[i]];
+            }
+            return new SearchHits(page, matched);
+        }
+    }
+
+    private static final class Postings {
+        private byte[] data = new byte[4];
+        private int size;
+        private int docFrequency;
+        private int lastDoc = -1;
+
+        /**
+         * @return bytes of heap newly allocated
+         */
+        long add(int doc, int frequency) {
+            long grown = 0;
+            if (size + 10 > data.length) {
+                int capacity = Math.max(data.length * 2, size + 10);
+                grown = capacity - data.length;
+                data = Arrays.copyOf(data, capacity);
+            }
+            writeVarint(doc - lastDoc);
+            writeVarint(frequency);
+            lastDoc = doc;
+            docFrequency++;
+            return grown;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+}
@@ -1,76 +1,344 @@
 package com.apica.interview.journalservice.service;
 
+import com.apica.interview.journalservice.event.InvalidJournalEventException;
+import com.apica.interview.journalservice.event.JournalEventCodec;
+import com.apica.interview.journalservice.model.ConsumerOffset;
+import com.apica.interview.journalservice.model.JournalCursor;
 import com.apica.interview.journalservice.model.JournalEntry;
-import com.apica.interview.journalservice.repository.JournalEntryRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.apica.interview.journalservice.model.JournalEntrySummary;
+import com.apica.interview.journalservice.model.JournalPage;
+import com.apica.interview.journalservice.model.JournalSearchPage;
+import com.apica.interview.journalservice.model.JournalSummaryPage;
+import com.apica.interview.journalservice.store.JournalStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
-public class JournalService {
+public class JournalService implements ConsumerSeekAware {
 
-    private static final String DATE_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+    private static final Logger log = LoggerFactory.getLogger(JournalService.class);
+
+    static final String JOURNAL_EVENTS_TOPIC = "journal-events";
+
+    private static final Date EARLIEST = new Date(0L);
+    private static final Date LATEST = new Date(253402300799999L); // 9999-12-31T23:59:59.999Z
 
     @Autowired
-    private JournalEntryRepository journalEntryRepository;
+    private JournalStore journalStore;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private RecentEntriesCache recentEntriesCache;
 
-    @KafkaListener(topics = "user-events", groupId = "journal-group")
-    public void consumeUserEvent(String event) throws JsonProcessingException, ParseException {
-        JournalEntry entry = parseJournalEntryFromEvent(event);
-        journalEntryRepository.save(entry);
-        System.out.println("Journal entry created: " + entry);
-    }
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
-    private JournalEntry parseJournalEntryFromEvent(String event) throws JsonProcessingException, ParseException {
-        String username = extractField(event, "username");
-        String contentJsonString = extractField(event, "content");
-        Date createdAt = extractDateField(event, "createdAt");
+    @Autowired
+    private JournalSearchIndex journalSearchIndex;
 
-        String content = extractContentFromJson(contentJsonString);
+    @Autowired
+    private UserActivityService userActivityService;
 
-        JournalEntry entry = new JournalEntry();
-        entry.setUsername(username);
-        entry.setContent(content);
-        entry.setCreatedAt(createdAt);
+    @Autowired
+    private PoisonEventHandler poisonEventHandler;
 
-        return entry;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${journal.content.compress-above-bytes}")
+    private int compressAboveBytes;
+
+    private final JournalEventCodec eventCodec = new JournalEventCodec();
+
+    /**
+     * Consumes a whole poll of journal entry events at once (see {@code spring.kafka.listener.type=batch}) and persists
+     * them in a single transaction, so the {@link JournalStore} gets the whole poll in one append (with JPA, JDBC
+     * batches of {@code journal.ingest.batch-size}). The next offset of every partition in the batch is stored
+     * along with the entries, and the users' {@link UserActivityService} counts in the same transaction.
+     * <p>
+     * Up to {@code journal.ingest.concurrency} containers run this method, each owning a disjoint set of
+     * partitions. Records are keyed by username, so all of a user's events are handled by one thread in offset
+     * order and nothing here needs per-user locking.
+     * <p>
+     * A record that can never be ingested must not hold up the rest of its partition: malformed payloads are
+     * dead-lettered straight away, and if the batch as a whole fails to persist it is retried one record per
+     * transaction, handing each record that still fails to the retry topics. Either way the partition moves on.
+     */
+    @KafkaListener(topics = JOURNAL_EVENTS_TOPIC, groupId = "journal-group")
+    public void consumeJournalEvents(List<ConsumerRecord<String, String>> records) {
+        if (records.isEmpty()) {
+            // Everything in the poll was filtered out by its event-type header.
+            return;
+        }
+        List<ConsumerRecord<String, String>> pending = notYetStored(records);
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<ConsumerRecord<String, String>> decoded = new ArrayList<>(pending.size());
+        List<JournalEntry> entries = new ArrayList<>(pending.size());
+        Map<String, ConsumerOffset> nextOffsets = new HashMap<>();
+        for (ConsumerRecord<String, String> record : pending) {
+            try {
+                entries.add(parseJournalEntryFromEvent(record.value()));
+                decoded.add(record);
+            } catch (InvalidJournalEventException e) {
+                // Decoding is deterministic, so retrying a malformed payload would only fail again.
+                poisonEventHandler.deadLetter(record, e);
+            }
+            ConsumerOffset offset = nextOffset(record);
+            nextOffsets.put(offset.getId(), offset);
+        }
+
+        try {
+            persist(entries, nextOffsets.values());
+        } catch (RuntimeException batchFailure) {
+            // The rolled-back batch already assigned ids to its entities, so each record is decoded again rather
+            // than having a store take those ids for existing rows. A store outside the database keeps a batch
+            // whose commit failed after it was appended, so its records are left out.
+            for (ConsumerRecord<String, String> record : notYetStored(decoded)) {
+                try {
+                    persist(Collections.singletonList(parseJournalEntryFromEvent(record.value())),
+                            Collections.singletonList(nextOffset(record)));
+                } catch (RuntimeException e) {
+                    poisonEventHandler.retry(record, e);
+                }
+            }
+            storeOffsets(nextOffsets.values());
+        }
+        recordIngest(pending, entries);
     }
 
-    private String extractContentFromJson(String contentJsonString) throws JsonProcessingException {
-        JsonNode jsonNode = objectMapper.readTree(contentJsonString);
-        return jsonNode.get("content").asText();
+    /**
+     * Drops the records the store already has. Kafka redelivers the whole poll when handing a record to
+     * {@link PoisonEventHandler} fails, including the records that the per-record fallback already persisted.
+     */
+    private List<ConsumerRecord<String, String>> notYetStored(List<ConsumerRecord<String, String>> records) {
+        Set<String> ids = new HashSet<>();
+        for (ConsumerRecord<String, String> record : records) {
+            ids.add(ConsumerOffset.idFor(record.topic(), record.partition()));
+        }
+        Map<String, Long> stored = journalStore.nextOffsets(ids);
+        if (stored.isEmpty()) {
+            return records;
+        }
+        List<ConsumerRecord<String, String>> pending = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, String> record : records) {
+            Long nextOffset = stored.get(ConsumerOffset.idFor(record.topic(), record.partition()));
+            if (nextOffset == null || record.offset() >= nextOffset) {
+                pending.add(record);
+            }
+        }
+        return pending;
     }
 
-    private String extractField(String str, String fieldName) {
-        int startIndex = str.indexOf(fieldName + "=") + (fieldName.length() + 1);
-        int endIndex = str.indexOf(',', startIndex);
-        if (endIndex == -1) {
-            endIndex = str.indexOf('}', startIndex);
+    /**
+     * {@code journal.ingest.latency} is the time from the producer stamping a record to its entry being committed
+     * here, which includes any time the record waited in Kafka; {@code journal.ingest.batch.size} is records per
+     * poll; {@code journal.content.stored.bytes} is the size each entry's content takes in its row.
+     */
+    private void recordIngest(List<ConsumerRecord<String, String>> records, List<JournalEntry> persisted) {
+        long now = System.currentTimeMillis();
+        Timer latency = meterRegistry.timer("journal.ingest.latency");
+        for (ConsumerRecord<String, String> record : records) {
+            if (record.timestamp() >= 0) {
+                latency.record(Math.max(0, now - record.timestamp()), TimeUnit.MILLISECONDS);
+            }
+        }
+        meterRegistry.summary("journal.ingest.batch.size").record(records.size());
+        for (JournalEntry entry : persisted) {
+            meterRegistry.summary("journal.content.stored.bytes",
+                    "encoding", entry.isContentCompressed() ? "deflate" : "plain").record(entry.getStoredContentBytes());
         }
+        log.debug("Journal entries created: {} of {} records", persisted.size(), records.size());
+    }
+
+    /**
+     * Ingests a single event taken back off a retry topic. The retry topic's next offset is stored with the entry,
+     * or on its own once the record has been passed on, so {@link JournalRetryListener} resumes from the store the
+     * same way {@link #onPartitionsAssigned} does: a retried entry is neither lost when a snapshot is restored nor
+     * ingested again when Kafka's commit did not make it.
+     */
+    public void consumeRetriedEvent(ConsumerRecord<String, String> record) {
+        List<ConsumerOffset> offsets = Collections.singletonList(nextOffset(record));
+        JournalEntry entry;
         try {
-            return str.substring(startIndex, endIndex).replace("'", "").trim();
-        } catch (StringIndexOutOfBoundsException e){
-            throw new RuntimeException("Could not extract JSON from content");
+            entry = parseJournalEntryFromEvent(record.value());
+        } catch (InvalidJournalEventException e) {
+            poisonEventHandler.deadLetter(record, e);
+            storeOffsets(offsets);
+            return;
         }
+        try {
+            persist(Collections.singletonList(entry), offsets);
+        } catch (RuntimeException e) {
+            poisonEventHandler.retry(record, e);
+            storeOffsets(offsets);
+        }
+    }
+
+    /**
+     * The store is written last, so a store outside the database (see {@link JournalStore}) only receives batches
+     * whose database writes already succeeded. Those writes are flushed first: JPA would otherwise hold pending
+     * changes back until the commit, after the store already has the batch. The commit itself can still fail
+     * after such a store has the batch; see {@link com.apica.interview.journalservice.store.LogJournalStore}.
+     */
+    private void persist(List<JournalEntry> entries, Collection<ConsumerOffset> offsets) {
+        transactionTemplate.executeWithoutResult(status -> {
+            userActivityService.recordEntries(entries);
+            entityManager.flush();
+            List<JournalEntry> stored = journalStore.append(entries, offsets);
+            eventPublisher.publishEvent(new JournalEntriesPersistedEvent(stored));
+        });
+    }
+
+    /**
+     * Moves the stored offsets past records that were handed to {@link PoisonEventHandler} instead of persisted.
+     */
+    private void storeOffsets(Collection<ConsumerOffset> offsets) {
+        transactionTemplate.executeWithoutResult(status ->
+                journalStore.append(Collections.<JournalEntry>emptyList(), offsets));
+    }
+
+    private static ConsumerOffset nextOffset(ConsumerRecord<String, String> record) {
+        return new ConsumerOffset(record.topic(), record.partition(), record.offset() + 1);
     }
 
-    private Date extractDateField(String str, String fieldName) throws ParseException {
-        String dateStr = extractField(str, fieldName);
-        SimpleDateFormat formatter = new SimpleDateFormat(DATE_FORMAT);
-        return formatter.parse(dateStr);
+    /**
+     * The journal store (the database restored from a snapshot, or the log) is the source of truth for how far
+     * ingestion got, so every assignment resumes from the stored offsets rather than the group's committed ones.
+     * Partitions with nothing stored are replayed from the beginning.
+     */
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        List<String> ids = new ArrayList<>(assignments.size());
+        for (TopicPartition partition : assignments.keySet()) {
+            ids.add(ConsumerOffset.idFor(partition.topic(), partition.partition()));
+        }
+        Map<String, Long> stored = journalStore.nextOffsets(ids);
+        for (TopicPartition partition : assignments.keySet()) {
+            Long nextOffset = stored.get(ConsumerOffset.idFor(partition.topic(), partition.partition()));
+            if (nextOffset != null) {
+                callback.seek(partition.topic(), partition.partition(), nextOffset);
+            } else {
+                callback.seekToBeginning(partition.topic(), partition.partition());
+            }
+        }
     }
 
+    /**
+     * Decodes the event and, if its content is longer than {@code journal.content.compress-above-bytes}, switches
+     * the entry to compressed storage before it is persisted or cached.
+     */
+    private JournalEntry parseJournalEntryFromEvent(String event) {
+        JournalEntry entry = eventCodec.decode(event);
+        entry.compressContentAbove(Math.min(compressAboveBytes, JournalEntry.MAX_PLAIN_CONTENT_BYTES));
+        return entry;
+    }
+
+    @Transactional(readOnly = true)
     public List<JournalEntry> getEntriesForUser(String username) {
-        return journalEntryRepository.findByUsername(username);
+        return journalStore.findByUsername(username);
+    }
+
+    /**
+     * Newest-first page of at most {@code limit} entries created in {@code [from, to)}, continuing after
+     * {@code cursor} when one is given. Either bound may be {@code null} for an open range.
+     */
+    @Transactional(readOnly = true)
+    public JournalPage getEntriesPage(String username, Date from, Date to, JournalCursor cursor, int limit) {
+        if (cursor == null && from == null && to == null && recentEntriesCache.covers(limit)) {
+            return recentEntriesCache.firstPage(username, limit);
+        }
+
+        JournalCursor end = pageEnd(to, cursor);
+        List<JournalEntry> entries = journalStore.findPageBefore(username, from != null ? from : EARLIEST,
+                end.getCreatedAt(), end.getId(), limit + 1);
+        if (entries.size() <= limit) {
+            return new JournalPage(entries, null);
+        }
+        List<JournalEntry> page = entries.subList(0, limit);
+        return new JournalPage(page, JournalCursor.after(page.get(limit - 1)).encode());
+    }
+
+    /**
+     * Same page as {@link #getEntriesPage}, without reading or inflating any content.
+     */
+    @Transactional(readOnly = true)
+    public JournalSummaryPage getSummaryPage(String username, Date from, Date to, JournalCursor cursor, int limit) {
+        JournalCursor end = pageEnd(to, cursor);
+        List<JournalEntrySummary> entries = journalStore.findSummaryPageBefore(username,
+                from != null ? from : EARLIEST, end.getCreatedAt(), end.getId(), limit + 1);
+        if (entries.size() <= limit) {
+            return new JournalSummaryPage(entries, null);
+        }
+        List<JournalEntrySummary> page = entries.subList(0, limit);
+        JournalEntrySummary last = page.get(limit - 1);
+        return new JournalSummaryPage(page, new JournalCursor(last.getCreatedAt().getTime(), last.getId()).encode());
+    }
+
+    /**
+     * Keyset position a page ends before: the cursor, unless {@code to} cuts the range off earlier.
+     */
+    private static JournalCursor pageEnd(Date to, JournalCursor cursor) {
+        Date beforeCreatedAt = to != null ? to : LATEST;
+        if (cursor != null && cursor.getCreatedAt().before(beforeCreatedAt)) {
+            return cursor;
+        }
+        return new JournalCursor(beforeCreatedAt.getTime(), Long.MIN_VALUE);
+    }
+
+    /**
+     * One page of the user's entries matching {@code query}, in {@link JournalSearchIndex} rank order.
+     */
+    @Transactional(readOnly = true)
+    public JournalSearchPage searchEntries(String username, String query, int offset, int limit) {
+        JournalSearchIndex.SearchHits hits = journalSearchIndex.search(username, query, offset, limit);
+        List<Long> ids = new ArrayList<>(hits.getEntryIds().length);
+        for (long id : hits.getEntryIds()) {
+            ids.add(id);
+        }
+        Map<Long, JournalEntry> byId = new HashMap<>();
+        for (JournalEntry entry : journalStore.findAllById(username, ids)) {
+            byId.put(entry.getId(), entry);
+        }
+        List<JournalEntry> entries = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            JournalEntry entry = byId.get(id);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        int next = offset + ids.size();
+        return new JournalSearchPage(entries, hits.getTotalHits(), next < hits.getTotalHits() ? next : null);
     }
 }
@@ -0,0 +1,360 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.ContentCompression;
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.UserActivityDay;
+import com.apica.interview.journalservice.repository.ConsumerOffsetRepository;
+import com.apica.interview.journalservice.store.JournalArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps a gzipped on-disk copy of {@code journal_entries} together with the {@code consumer_offsets} it covers, so
+ * a restart loads the snapshot and resumes Kafka from those offsets instead of replaying the whole topic.
+ * <p>
+ * Both tables are read in one serializable transaction, which makes the entries and offsets in a snapshot
+ * mutually consistent without pausing ingestion. A snapshot whose format is not understood is ignored, which
+ * falls back to a full replay.
+ * <p>
+ * {@code user_activity_days} is derived from the entries, so it is not part of the snapshot and is recounted on
+ * restore instead.
+ * <p>
+ * Entries moved to the {@link JournalArchive} after a snapshot was taken are skipped when it is restored. Without a
+ * usable snapshot the whole topic is replayed, so the archive is dropped as well.
+ * <p>
+ * Only used with {@code journal.store.type=jpa}; the log store keeps its entries and offsets on disk itself.
+ */
+@Service
+@ConditionalOnProperty(name = "journal.store.type", havingValue = "jpa", matchIfMissing = true)
+public class JournalSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalSnapshotService.class);
+
+    private static final int MAGIC = 0x4A534E50; // "JSNP"
+    private static final int FORMAT_VERSION = 2;
+    /**
+     * Plain content only, from before {@code content_encoding}; still restored.
+     */
+    private static final int FORMAT_VERSION_PLAIN_CONTENT = 1;
+    private static final int RESTORE_BATCH_SIZE = 1000;
+    private static final int SEQUENCE_ALLOCATION_SIZE = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate snapshotTransaction;
+    private final TransactionTemplate restoreTransaction;
+    private final Path snapshotPath;
+    private final int compressAboveBytes;
+    private final JournalArchive archive;
+
+    private List<OffsetRow> lastSnapshotOffsets;
+    private volatile long lastSnapshotMaxId;
+
+    public JournalSnapshotService(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  ConsumerOffsetRepository consumerOffsetRepository,
+                                  JournalArchive archive,
+                                  @Value("${journal.snapshot.path}") String snapshotPath,
+                                  @Value("${journal.content.compress-above-bytes}") int compressAboveBytes) {
+        // The repository is only injected so that the schema exists before restore() runs.
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+        this.restoreTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotPath = Paths.get(snapshotPath);
+        this.compressAboveBytes = Math.min(compressAboveBytes, JournalEntry.MAX_PLAIN_CONTENT_BYTES);
+        this.archive = archive;
+    }
+
+    /**
+     * Runs before the Kafka listener containers start, so the consumer's partition assignment already sees the
+     * restored offsets.
+     */
+    @PostConstruct
+    public void restore() throws IOException {
+        if (!Files.isRegularFile(snapshotPath)) {
+            log.info("No journal snapshot at {}, replaying from the beginning", snapshotPath);
+            clearArchive();
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(snapshotPath), 64 * 1024)))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != FORMAT_VERSION && version != FORMAT_VERSION_PLAIN_CONTENT) {
+                log.warn("Ignoring journal snapshot {} with unknown format", snapshotPath);
+                clearArchive();
+                return;
+            }
+            long takenAt = in.readLong();
+            List<OffsetRow> offsets = readOffsets(in);
+            long entries = restoreTransaction.execute(status -> {
+                try {
+                    return restoreEntries(in, version, offsets);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            lastSnapshotOffsets = offsets;
+            log.info("Restored {} journal entries from snapshot taken at {}", entries, new Timestamp(takenAt));
+        }
+    }
+
+    private void clearArchive() throws IOException {
+        if (archive.getMaxId() > 0) {
+            log.warn("Dropping the journal archive, since its entries will be replayed into journal_entries");
+            archive.clear();
+        }
+    }
+
+    /**
+     * Highest entry id in the last snapshot written or restored, or 0. Every entry up to it that was committed when
+     * the snapshot was taken has its Kafka offset saved, so it will never be replayed.
+     */
+    public long getLastSnapshotMaxId() {
+        return lastSnapshotMaxId;
+    }
+
+    @Scheduled(initialDelayString = "${journal.snapshot.interval}", fixedDelayString = "${journal.snapshot.interval}")
+    public void scheduledSnapshot() throws IOException {
+        writeSnapshot();
+    }
+
+    @PreDestroy
+    public void snapshotOnShutdown() throws IOException {
+        writeSnapshot();
+    }
+
+    /**
+     * Writes a new snapshot unless nothing was consumed since the last one. The file is written next to the
+     * current snapshot and moved over it, so a crash mid-write never leaves a truncated snapshot behind.
+     */
+    public synchronized void writeSnapshot() throws IOException {
+        Path parent = snapshotPath.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = Files.createTempFile(parent, snapshotPath.getFileName().toString(), ".tmp");
+        try {
+            List<OffsetRow> offsets;
+            long[] maxId = new long[1];
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tempFile), 64 * 1024)))) {
+                offsets = snapshotTransaction.execute(status -> {
+                    List<OffsetRow> current = jdbcTemplate.query(
+                            "select topic, partition_id, next_offset from consumer_offsets order by id",
+                            (rs, rowNum) -> new OffsetRow(rs.getString(1), rs.getInt(2), rs.getLong(3)));
+                    if (current.equals(lastSnapshotOffsets)) {
+                        return null;
+                    }
+                    try {
+                        writeHeader(out, current);
+                        jdbcTemplate.query("select id, username, created_at, content_encoding, content_length, content, content_deflated"
+                                + " from journal_entries order by id", (RowCallbackHandler) rs -> {
+                            try {
+                                out.writeBoolean(true);
+                                out.writeLong(rs.getLong(1));
+                                maxId[0] = rs.getLong(1);
+                                out.writeUTF(rs.getString(2));
+                                out.writeLong(rs.getTimestamp(3).getTime());
+                                byte encoding = rs.getByte(4);
+                                out.writeByte(encoding);
+                                out.writeInt(rs.getInt(5));
+                                // Compressed content is copied as is, never inflated.
+                                String plain = rs.getString(6);
+                                writeBytes(out, encoding == ContentCompression.DEFLATE ? rs.getBytes(7)
+                                        : plain != null ? plain.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                        out.writeBoolean(false);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return current;
+                });
+            }
+            if (offsets == null) {
+                return;
+            }
+            Files.move(tempFile, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSnapshotOffsets = offsets;
+            lastSnapshotMaxId = Math.max(lastSnapshotMaxId, maxId[0]);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, List<OffsetRow> offsets) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(offsets.size());
+        for (OffsetRow offset : offsets) {
+            out.writeUTF(offset.topic);
+            out.writeInt(offset.partition);
+            out.writeLong(offset.nextOffset);
+        }
+    }
+
+    private static List<OffsetRow> readOffsets(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<OffsetRow> offsets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            offsets.add(new OffsetRow(in.readUTF(), in.readInt(), in.readLong()));
+        }
+        return offsets;
+    }
+
+    private long restoreEntries(DataInputStream in, int version, List<OffsetRow> offsets) throws IOException {
+        long restored = 0;
+        long maxId = 0;
+        List<Object[]> batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+        Map<String, UserActivityDay> activityDays = new LinkedHashMap<>();
+        while (in.readBoolean()) {
+            long id = in.readLong();
+            Object[] row = version == FORMAT_VERSION ? readRow(in, id) : readPlainContentRow(in, id);
+            maxId = Math.max(maxId, id);
+            if (archive.contains((String) row[1], id, (Timestamp) row[2])) {
+                continue;
+            }
+            batch.add(row);
+            countActivity(activityDays, (String) row[1], (Timestamp) row[2], (Integer) row[4]);
+            if (batch.size() == RESTORE_BATCH_SIZE) {
+                insertEntries(batch);
+                restored += batch.size();
+                batch.clear();
+            }
+        }
+        insertEntries(batch);
+        restored += batch.size();
+        lastSnapshotMaxId = maxId;
+        archive.forEachSummary(summary -> countActivity(activityDays, summary.getUsername(), summary.getCreatedAt(),
+                summary.getContentLength()));
+
+        List<Object[]> activityRows = new ArrayList<>(activityDays.size());
+        for (UserActivityDay day : activityDays.values()) {
+            activityRows.add(new Object[]{day.getId(), day.getUsername(), day.getEpochDay(), day.getEntryCount(), day.getContentChars()});
+        }
+        jdbcTemplate.batchUpdate("insert into user_activity_days (id, username, epoch_day, entry_count, content_chars)"
+                + " values (?, ?, ?, ?, ?)", activityRows);
+
+        List<Object[]> offsetRows = new ArrayList<>(offsets.size());
+        for (OffsetRow offset : offsets) {
+            offsetRows.add(new Object[]{offset.topic + "-" + offset.partition, offset.topic, offset.partition, offset.nextOffset});
+        }
+        jdbcTemplate.batchUpdate("insert into consumer_offsets (id, topic, partition_id, next_offset) values (?, ?, ?, ?)", offsetRows);
+        // Keep freshly generated ids clear of the restored ones, whatever block the pooled optimizer starts from.
+        jdbcTemplate.execute("alter sequence journal_entries_seq restart with "
+                + (Math.max(maxId, archive.getMaxId()) + SEQUENCE_ALLOCATION_SIZE + 1));
+        return restored;
+    }
+
+    private static void countActivity(Map<String, UserActivityDay> days, String username, Date createdAt,
+                                      int contentLength) {
+        long epochDay = UserActivityDay.epochDayOf(createdAt);
+        days.computeIfAbsent(UserActivityDay.idFor(username, epochDay), id -> new UserActivityDay(username, epochDay))
+                .add(1, contentLength);
+    }
+
+    private void insertEntries(List<Object[]> batch) {
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into journal_entries (id, username, created_at, content_encoding, content_length,"
+                    + " content, content_deflated) values (?, ?, ?, ?, ?, ?, ?)", batch);
+        }
+    }
+
+    private static Object[] readRow(DataInputStream in, long id) throws IOException {
+        String username = in.readUTF();
+        Timestamp createdAt = new Timestamp(in.readLong());
+        byte encoding = in.readByte();
+        int contentLength = in.readInt();
+        byte[] content = readBytes(in);
+        return encoding == ContentCompression.DEFLATE
+                ? new Object[]{id, username, createdAt, encoding, contentLength, null, content}
+                : new Object[]{id, username, createdAt, encoding, contentLength, new String(content, StandardCharsets.UTF_8), null};
+    }
+
+    /**
+     * A row from a {@link #FORMAT_VERSION_PLAIN_CONTENT} snapshot, compressed on the way in like a newly consumed
+     * entry would be.
+     */
+    private Object[] readPlainContentRow(DataInputStream in, long id) throws IOException {
+        String username = in.readUTF();
+        String content = new String(readBytes(in), StandardCharsets.UTF_8);
+        Timestamp createdAt = new Timestamp(in.readLong());
+        if (content.getBytes(StandardCharsets.UTF_8).length > compressAboveBytes) {
+            return new Object[]{id, username, createdAt, ContentCompression.DEFLATE, content.length(), null,
+                    ContentCompression.deflate(content)};
+        }
+        return new Object[]{id, username, createdAt, ContentCompression.PLAIN, content.length(), content, null};
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static final class OffsetRow {
+        private final String topic;
+        private final int partition;
+        private final long nextOffset;
+
+        private OffsetRow(String topic, int partition, long nextOffset) {
+            this.topic = topic;
+            this.partition = partition;
+            this.nextOffset = nextOffset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof OffsetRow)) {
+                return false;
+            }
+            OffsetRow other = (OffsetRow) o;
+            return partition == other.partition && nextOffset == other.nextOffset && topic.equals(other.topic);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * topic.hashCode() + partition) + Long.hashCode(nextOffset);
+        }
+    }
+}
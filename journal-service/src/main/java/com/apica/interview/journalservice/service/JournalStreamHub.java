@@ -0,0 +1,350 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans newly committed journal entries out to the user's {@code GET /api/journals/stream} subscribers as
+ * Server-Sent Events.
+ * <p>
+ * A subscription is an async request, so an idle one holds a socket and an {@link SseEmitter} but no thread.
+ * Entries are queued per subscriber, up to {@code journal.stream.buffer-size}, and written by a pool of
+ * {@code journal.stream.sender-threads}; the consumer only ever enqueues, so a slow client can never hold up
+ * ingestion. When a subscriber's queue is full, {@code journal.stream.overflow} decides: {@code drop} discards its
+ * oldest queued entry and later tells the client how many it missed with a {@code gap} event, {@code disconnect}
+ * closes the stream so the client reconnects and catches up with a regular read.
+ * <p>
+ * A comment is sent every {@code journal.stream.heartbeat-interval}, which keeps proxies from closing idle
+ * streams and finds clients that went away without closing theirs. The hub schedules this on a thread of its own:
+ * on Spring's shared scheduler a long snapshot or archiving run would hold it up. Subscribers are published as
+ * {@code journal.stream.subscribers} and discarded entries as {@code journal.stream.dropped}.
+ * <p>
+ * Writes block, so a client that stops reading holds a sender thread until the connector's write timeout
+ * ({@code server.tomcat.connection-timeout}) fails the write. The heartbeat also looks for writes that have been
+ * blocked longer than {@code journal.stream.send-timeout} and disconnects those streams, so they get no more work
+ * once the write returns. Only sender threads complete an emitter: completing takes the emitter's lock, which a
+ * blocked write holds.
+ */
+@Component
+public class JournalStreamHub {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalStreamHub.class);
+
+    enum Overflow {
+        DROP, DISCONNECT
+    }
+
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Executor sender;
+    private final int bufferSize;
+    private final Overflow overflow;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final int maxSubscribers;
+    private final Counter droppedEntries;
+    private final Counter disconnectedSubscribers;
+    private ScheduledExecutorService heartbeats;
+
+    @Autowired
+    public JournalStreamHub(@Value("${journal.stream.sender-threads}") int senderThreads,
+                            @Value("${journal.stream.buffer-size}") int bufferSize,
+                            @Value("${journal.stream.overflow}") String overflow,
+                            @Value("${journal.stream.timeout}") Duration timeout,
+                            @Value("${journal.stream.send-timeout}") Duration sendTimeout,
+                            @Value("${journal.stream.max-subscribers}") int maxSubscribers,
+                            @Value("${journal.stream.heartbeat-interval}") Duration heartbeatInterval,
+                            MeterRegistry meterRegistry) {
+        this(senderPool(senderThreads), bufferSize, Overflow.valueOf(overflow.toUpperCase(Locale.ROOT)), timeout,
+                sendTimeout, maxSubscribers, meterRegistry);
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = heartbeatInterval.toMillis();
+        heartbeats.scheduleWithFixedDelay(this::sendHeartbeatsQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    JournalStreamHub(Executor sender, int bufferSize, Overflow overflow, Duration timeout, Duration sendTimeout,
+                     int maxSubscribers, MeterRegistry meterRegistry) {
+        this.sender = sender;
+        this.bufferSize = bufferSize;
+        this.overflow = overflow;
+        this.timeoutMillis = timeout.toMillis();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.maxSubscribers = maxSubscribers;
+        Gauge.builder("journal.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open journal entry streams")
+                .register(meterRegistry);
+        this.droppedEntries = Counter.builder("journal.stream.dropped")
+                .description("Entries discarded from the queue of a subscriber that fell behind")
+                .register(meterRegistry);
+        this.disconnectedSubscribers = Counter.builder("journal.stream.disconnected")
+                .description("Streams closed because their subscriber fell behind or stopped reading")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a stream of the user's entries committed from now on. The emitter times out after
+     * {@code journal.stream.timeout}, after which clients are expected to reconnect.
+     */
+    public SseEmitter subscribe(String username) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many open journal streams");
+        }
+        SseEmitter emitter = newEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(username, emitter);
+        // Added inside compute, so it cannot race with the last subscriber of the user removing the set.
+        subscribers.compute(username, (key, userSubscribers) -> {
+            Set<Subscriber> updated = userSubscribers != null ? userSubscribers : ConcurrentHashMap.newKeySet();
+            updated.add(subscriber);
+            return updated;
+        });
+        emitter.onCompletion(subscriber::remove);
+        emitter.onTimeout(subscriber::remove);
+        emitter.onError(error -> subscriber.remove());
+        return emitter;
+    }
+
+    @TransactionalEventListener
+    public void onEntriesPersisted(JournalEntriesPersistedEvent event) {
+        Map<String, List<JournalEntry>> byUser = new LinkedHashMap<>();
+        for (JournalEntry entry : event.getEntries()) {
+            if (subscribers.containsKey(entry.getUsername())) {
+                byUser.computeIfAbsent(entry.getUsername(), key -> new ArrayList<>()).add(entry);
+            }
+        }
+        byUser.forEach((username, entries) -> {
+            Set<Subscriber> userSubscribers = subscribers.get(username);
+            if (userSubscribers != null) {
+                for (Subscriber subscriber : userSubscribers) {
+                    subscriber.offer(entries);
+                }
+            }
+        });
+    }
+
+    /**
+     * An exception escaping a fixed-delay task would cancel every later run, and with it the heartbeats.
+     */
+    private void sendHeartbeatsQuietly() {
+        try {
+            sendHeartbeats();
+        } catch (RuntimeException e) {
+            log.warn("Sending journal stream heartbeats failed", e);
+        }
+    }
+
+    void sendHeartbeats() {
+        long now = System.nanoTime();
+        for (Set<Subscriber> userSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : userSubscribers) {
+                long sendingSince = subscriber.sendingSince;
+                if (sendingSince != 0 && now - sendingSince >= sendTimeoutNanos) {
+                    log.debug("Closing journal stream of {}, whose client stopped reading", subscriber.username);
+                    subscriber.disconnect();
+                } else {
+                    subscriber.heartbeat();
+                }
+            }
+        }
+    }
+
+    int subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (heartbeats != null) {
+            heartbeats.shutdown();
+        }
+        for (Set<Subscriber> userSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : userSubscribers) {
+                subscriber.close();
+            }
+        }
+        // Drains already queued still run, and complete the emitters.
+        if (sender instanceof ExecutorService) {
+            ((ExecutorService) sender).shutdown();
+        }
+    }
+
+    private final class Subscriber {
+        private final String username;
+        private final SseEmitter emitter;
+        private final ArrayBlockingQueue<JournalEntry> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicInteger missed = new AtomicInteger();
+        private final AtomicBoolean heartbeatDue = new AtomicBoolean();
+        private final AtomicBoolean closeDue = new AtomicBoolean();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean removed = new AtomicBoolean();
+        /**
+         * {@link System#nanoTime()} when the write in progress started, or 0 between writes.
+         */
+        private volatile long sendingSince;
+
+        private Subscriber(String username, SseEmitter emitter) {
+            this.username = username;
+            this.emitter = emitter;
+        }
+
+        private void offer(List<JournalEntry> entries) {
+            for (JournalEntry entry : entries) {
+                while (!queue.offer(entry)) {
+                    if (overflow == Overflow.DISCONNECT) {
+                        log.debug("Closing journal stream of {}, which fell {} entries behind", username, bufferSize);
+                        disconnect();
+                        return;
+                    }
+                    if (queue.poll() != null) {
+                        missed.incrementAndGet();
+                        droppedEntries.increment();
+                    }
+                }
+            }
+            schedule();
+        }
+
+        private void heartbeat() {
+            if (queue.isEmpty()) {
+                heartbeatDue.set(true);
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (!removed.get() && scheduled.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void disconnect() {
+            if (close()) {
+                disconnectedSubscribers.increment();
+            }
+        }
+
+        /**
+         * Stops queueing for this subscriber and leaves completing the emitter to a sender thread, right away if
+         * none is draining it, or else once the drain's current write returns.
+         */
+        private boolean close() {
+            if (!closeDue.compareAndSet(false, true)) {
+                return false;
+            }
+            remove();
+            if (scheduled.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+            return true;
+        }
+
+        /**
+         * Runs on one sender thread at a time, which is what keeps writes to the emitter sequential. Gives the
+         * thread back once there is nothing left to send.
+         */
+        private void drain() {
+            try {
+                while (true) {
+                    if (closeDue.get()) {
+                        emitter.complete();
+                        return;
+                    }
+                    if (removed.get()) {
+                        return;
+                    }
+                    int gap = missed.getAndSet(0);
+                    if (gap > 0) {
+                        send(SseEmitter.event().name("gap").data(gap));
+                    }
+                    JournalEntry entry = queue.poll();
+                    if (entry != null) {
+                        send(SseEmitter.event()
+                                .id(String.valueOf(entry.getId()))
+                                .name("entry")
+                                .data(entry, MediaType.APPLICATION_JSON));
+                    } else if (heartbeatDue.getAndSet(false)) {
+                        send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        scheduled.set(false);
+                        // Something may have been offered after the poll but before the flag was cleared.
+                        if (queue.isEmpty() && missed.get() == 0 && !heartbeatDue.get() && !closeDue.get()
+                                || !scheduled.compareAndSet(false, true)) {
+                            return;
+                        }
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away, or the emitter already completed; the container reports the former too.
+                remove();
+            }
+        }
+
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            sendingSince = System.nanoTime();
+            try {
+                emitter.send(event);
+            } finally {
+                sendingSince = 0;
+            }
+        }
+
+        private void remove() {
+            if (removed.compareAndSet(false, true)) {
+                subscribers.computeIfPresent(username, (key, userSubscribers) -> {
+                    userSubscribers.remove(this);
+                    return userSubscribers.isEmpty() ? null : userSubscribers;
+                });
+                subscriberCount.decrementAndGet();
+                queue.clear();
+            }
+        }
+    }
+
+    private static ExecutorService senderPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "journal-stream-sender-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A per-user counter bumped after every committed batch that adds to the user's journal, from which the journal
+ * reads derive their ETags. A conditional read can then be answered with a map lookup instead of a query.
+ * <p>
+ * The counters live in memory only, so every ETag also carries this instance's start time: after a restart, or
+ * from another instance, a client's ETag simply stops matching. Users without a write since startup are at
+ * version 0.
+ * <p>
+ * Browser caches are keyed by URL, not by who is signed in, so each ETag also carries a hash of the username: an
+ * ETag cached for one user can never match another user's journal in the same browser.
+ * <p>
+ * The version must be taken before the data is read. A batch committed in between then only costs the client one
+ * more full response, whereas the other way round it could keep a stale body under a current ETag. The same holds
+ * for a read replica only while the user's reads stay on the primary after a write (see
+ * {@code journal.datasource.read-your-writes-window}).
+ */
+@Component
+public class JournalVersions {
+
+    /**
+     * Listeners that keep read-side state ({@link RecentEntriesCache}, {@link JournalSearchIndex}, the replica
+     * routing's recent writers) run before the version is bumped, or a read could pair the new ETag with a result
+     * that does not have the batch yet.
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE;
+    public static final int READ_STATE_ORDER = ORDER - 1;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    @TransactionalEventListener
+    @Order(ORDER)
+    public void onEntriesPersisted(JournalEntriesPersistedEvent event) {
+        Set<String> usernames = new HashSet<>();
+        for (JournalEntry entry : event.getEntries()) {
+            usernames.add(entry.getUsername());
+        }
+        for (String username : usernames) {
+            versions.merge(username, 1L, Long::sum);
+        }
+    }
+
+    public long versionOf(String username) {
+        return versions.getOrDefault(username, 0L);
+    }
+
+    /**
+     * Unquoted ETag for the user's journal as it is now.
+     */
+    public String etagFor(String username) {
+        String user = DigestUtils.md5DigestAsHex(username.getBytes(StandardCharsets.UTF_8));
+        return user + "-" + epoch + "-" + Long.toString(versionOf(username), 36);
+    }
+}
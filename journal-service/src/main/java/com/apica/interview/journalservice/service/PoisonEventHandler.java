@@ -0,0 +1,138 @@
+package com.apica.interview.journalservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Moves events that could not be ingested out of the way of the rest of their partition.
+ * <p>
+ * Events that failed for a possibly transient reason go to {@code journal-events-retry-<n>}, one topic per step
+ * of {@code journal.retry.backoff}, stamped with the time they become due; {@link JournalRetryListener} picks
+ * them up from there. Events that are malformed, or have used up every retry step, go to
+ * {@code journal-events-dlt} with the failure reason in a header. Counted as {@code journal.events.retried} and
+ * {@code journal.events.dead-lettered}.
+ */
+@Component
+public class PoisonEventHandler {
+
+    public static final String DEAD_LETTER_TOPIC = "journal-events-dlt";
+    public static final String RETRY_TOPIC_PREFIX = "journal-events-retry-";
+
+    public static final String ATTEMPT_HEADER = "retry-attempt";
+    public static final String NOT_BEFORE_HEADER = "retry-not-before";
+    public static final String FAILURE_REASON_HEADER = "failure-reason";
+    public static final String ORIGINAL_TOPIC_HEADER = "original-topic";
+    public static final String ORIGINAL_PARTITION_HEADER = "original-partition";
+    public static final String ORIGINAL_OFFSET_HEADER = "original-offset";
+
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final List<Duration> backoff;
+    private final MeterRegistry meterRegistry;
+
+    public PoisonEventHandler(KafkaTemplate<String, String> kafkaTemplate,
+                              @Value("${journal.retry.backoff}") List<Duration> backoff,
+                              MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.backoff = backoff;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public List<String> retryTopics() {
+        List<String> topics = new ArrayList<>(backoff.size());
+        for (int attempt = 0; attempt < backoff.size(); attempt++) {
+            topics.add(RETRY_TOPIC_PREFIX + attempt);
+        }
+        return topics;
+    }
+
+    /**
+     * Schedules another attempt after the next backoff step, or dead-letters the event if there is none left.
+     */
+    public void retry(ConsumerRecord<String, String> record, Exception reason) {
+        int attempt = intHeader(record.headers(), ATTEMPT_HEADER, 0);
+        if (attempt >= backoff.size()) {
+            deadLetter(record, reason);
+            return;
+        }
+        ProducerRecord<String, String> retry = forward(record, RETRY_TOPIC_PREFIX + attempt, reason);
+        retry.headers().add(ATTEMPT_HEADER, ByteBuffer.allocate(4).putInt(attempt + 1).array());
+        retry.headers().add(NOT_BEFORE_HEADER,
+                ByteBuffer.allocate(8).putLong(System.currentTimeMillis() + backoff.get(attempt).toMillis()).array());
+        send(retry);
+        meterRegistry.counter("journal.events.retried", "reason", reason.getClass().getSimpleName()).increment();
+    }
+
+    public void deadLetter(ConsumerRecord<String, String> record, Exception reason) {
+        ProducerRecord<String, String> deadLetter = forward(record, DEAD_LETTER_TOPIC, reason);
+        deadLetter.headers().add(ATTEMPT_HEADER, ByteBuffer.allocate(4).putInt(intHeader(record.headers(), ATTEMPT_HEADER, 0)).array());
+        send(deadLetter);
+        meterRegistry.counter("journal.events.dead-lettered", "reason", reason.getClass().getSimpleName()).increment();
+    }
+
+    /**
+     * @return when a record taken from a retry topic becomes due, in epoch millis
+     */
+    public static long notBefore(ConsumerRecord<String, String> record) {
+        Header header = record.headers().lastHeader(NOT_BEFORE_HEADER);
+        return header != null ? ByteBuffer.wrap(header.value()).getLong() : 0L;
+    }
+
+    private static ProducerRecord<String, String> forward(ConsumerRecord<String, String> record, String topic, Exception reason) {
+        ProducerRecord<String, String> forwarded = new ProducerRecord<>(topic, record.key(), record.value());
+        Headers headers = forwarded.headers();
+        for (Header header : record.headers()) {
+            if (!isRetryHeader(header.key())) {
+                headers.add(header);
+            }
+        }
+        if (headers.lastHeader(ORIGINAL_TOPIC_HEADER) == null) {
+            headers.add(ORIGINAL_TOPIC_HEADER, record.topic().getBytes(StandardCharsets.UTF_8));
+            headers.add(ORIGINAL_PARTITION_HEADER, ByteBuffer.allocate(4).putInt(record.partition()).array());
+            headers.add(ORIGINAL_OFFSET_HEADER, ByteBuffer.allocate(8).putLong(record.offset()).array());
+        }
+        String message = reason.getClass().getName() + ": " + reason.getMessage();
+        headers.add(FAILURE_REASON_HEADER, message.getBytes(StandardCharsets.UTF_8));
+        return forwarded;
+    }
+
+    private static boolean isRetryHeader(String key) {
+        return ATTEMPT_HEADER.equals(key) || NOT_BEFORE_HEADER.equals(key) || FAILURE_REASON_HEADER.equals(key);
+    }
+
+    private static int intHeader(Headers headers, String key, int defaultValue) {
+        Header header = headers.lastHeader(key);
+        return header != null ? ByteBuffer.wrap(header.value()).getInt() : defaultValue;
+    }
+
+    /**
+     * Waits for the broker so the failed record is never acknowledged on its own topic before it is safely stored
+     * on the next one; if this fails, the whole poll is redelivered.
+     */
+    private void send(ProducerRecord<String, String> record) {
+        try {
+            kafkaTemplate.send(record).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while forwarding event to " + record.topic(), e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Could not forward event to " + record.topic(), e);
+        }
+    }
+}
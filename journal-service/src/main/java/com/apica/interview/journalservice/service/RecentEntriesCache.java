@@ -0,0 +1,156 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.JournalCursor;
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.JournalPage;
+import com.apica.interview.journalservice.store.JournalStore;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-through cache of each user's newest {@code journal.recent-cache.entries-per-user} entries, used to serve
+ * the first page of {@code GET /api/journals}. Bounded by an estimate of the bytes held and by a TTL, and kept
+ * current by merging in every batch the consumer commits, so writes that go through this service are never
+ * served stale.
+ * <p>
+ * Published as {@code cache.*{cache="journal.recent"}} (hits, misses, evictions) plus
+ * {@code journal.recent.cache.bytes} for the estimated footprint.
+ */
+@Component
+public class RecentEntriesCache {
+
+    static final Comparator<JournalEntry> NEWEST_FIRST = Comparator
+            .comparing(JournalEntry::getCreatedAt, Comparator.comparingLong(Date::getTime))
+            .thenComparing(JournalEntry::getId)
+            .reversed();
+
+    private static final Date EARLIEST = new Date(0L);
+    private static final Date LATEST = new Date(253402300799999L); // 9999-12-31T23:59:59.999Z
+
+    private final JournalStore journalStore;
+    private final int entriesPerUser;
+    private final Cache<String, RecentEntries> cache;
+
+    public RecentEntriesCache(JournalStore journalStore,
+                              @Value("${journal.recent-cache.entries-per-user}") int entriesPerUser,
+                              @Value("${journal.recent-cache.max-size}") DataSize maxSize,
+                              @Value("${journal.recent-cache.ttl}") Duration ttl,
+                              MeterRegistry meterRegistry) {
+        this.journalStore = journalStore;
+        this.entriesPerUser = entriesPerUser;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String username, RecentEntries recent) -> recent.estimatedBytes)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "journal.recent");
+        Gauge.builder("journal.recent.cache.bytes", cache, c -> c.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L))
+                        .orElse(0L))
+                .description("Estimated heap held by cached recent entries")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether a first page of {@code limit} entries can be answered from the cache.
+     */
+    public boolean covers(int limit) {
+        return limit <= entriesPerUser;
+    }
+
+    public JournalPage firstPage(String username, int limit) {
+        RecentEntries recent = cache.get(username, this::load);
+        List<JournalEntry> entries = recent.entries;
+        if (entries.size() > limit) {
+            List<JournalEntry> page = entries.subList(0, limit);
+            return new JournalPage(page, JournalCursor.after(page.get(limit - 1)).encode());
+        }
+        String nextCursor = recent.hasMore && !entries.isEmpty()
+                ? JournalCursor.after(entries.get(entries.size() - 1)).encode()
+                : null;
+        return new JournalPage(entries, nextCursor);
+    }
+
+    @TransactionalEventListener
+    @Order(JournalVersions.READ_STATE_ORDER)
+    public void onEntriesPersisted(JournalEntriesPersistedEvent event) {
+        Map<String, List<JournalEntry>> byUser = new LinkedHashMap<>();
+        for (JournalEntry entry : event.getEntries()) {
+            byUser.computeIfAbsent(entry.getUsername(), username -> new ArrayList<>()).add(entry);
+        }
+        // Users that are not cached are left alone; their next read loads them with these entries included.
+        byUser.forEach((username, added) ->
+                cache.asMap().computeIfPresent(username, (key, recent) -> recent.merge(added, entriesPerUser)));
+    }
+
+    private RecentEntries load(String username) {
+        List<JournalEntry> newest = journalStore.findPageBefore(username, EARLIEST, LATEST, Long.MIN_VALUE, entriesPerUser + 1);
+        boolean hasMore = newest.size() > entriesPerUser;
+        return new RecentEntries(hasMore ? new ArrayList<>(newest.subList(0, entriesPerUser)) : newest, hasMore);
+    }
+
+    private static final class RecentEntries {
+        private final List<JournalEntry> entries;
+        private final boolean hasMore;
+        private final int estimatedBytes;
+
+        private RecentEntries(List<JournalEntry> entries, boolean hasMore) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.hasMore = hasMore;
+            this.estimatedBytes = estimateBytes(entries);
+        }
+
+        /**
+         * A load that ran after the batch committed but before this merge already has some of {@code added}, so
+         * those are skipped by id.
+         */
+        private RecentEntries merge(List<JournalEntry> added, int limit) {
+            Set<Long> ids = new HashSet<>();
+            for (JournalEntry entry : entries) {
+                ids.add(entry.getId());
+            }
+            List<JournalEntry> merged = new ArrayList<>(entries.size() + added.size());
+            merged.addAll(entries);
+            for (JournalEntry entry : added) {
+                if (ids.add(entry.getId())) {
+                    merged.add(entry);
+                }
+            }
+            merged.sort(NEWEST_FIRST);
+            if (merged.size() > limit) {
+                return new RecentEntries(new ArrayList<>(merged.subList(0, limit)), true);
+            }
+            return new RecentEntries(merged, hasMore);
+        }
+
+        private static int estimateBytes(List<JournalEntry> entries) {
+            long bytes = 64;
+            for (JournalEntry entry : entries) {
+                // Object headers, boxed id and Date, the username's chars and the content as stored.
+                bytes += 112 + 2L * entry.getUsername().length() + entry.getStoredContentBytes();
+            }
+            return (int) Math.min(bytes, Integer.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.ActivityStats;
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.UserActivityDay;
+import com.apica.interview.journalservice.repository.UserActivityDayRepository;
+import com.apica.interview.journalservice.store.JournalStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-user activity counts by day. The counters are maintained incrementally as entries are ingested, so serving a
+ * range costs one index lookup per day in it, however many entries those days hold.
+ */
+@Service
+public class UserActivityService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserActivityService.class);
+
+    @Autowired
+    private UserActivityDayRepository userActivityDayRepository;
+
+    @Autowired
+    private JournalStore journalStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Recounts every day from the journal store if there are entries but no counts, which is how a store that
+     * lives outside the database (or a database restored without them) starts up. Runs before the consumer does.
+     */
+    @PostConstruct
+    public void rebuildIfEmpty() {
+        if (userActivityDayRepository.count() > 0) {
+            return;
+        }
+        Map<String, UserActivityDay> days = new LinkedHashMap<>();
+        journalStore.forEach(entry -> count(days, entry));
+        if (!days.isEmpty()) {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                    userActivityDayRepository.saveAll(days.values()));
+            log.info("Activity counts rebuilt for {} user days", days.size());
+        }
+    }
+
+    /**
+     * Adds {@code entries} to their users' days. Must join the transaction that persists the entries, so the counts
+     * commit or roll back with them.
+     * <p>
+     * A day without a row is inserted right away rather than at flush. If another writer (the retry consumer, say)
+     * inserted the same day in between, the insert fails on its key and the delta goes into that row instead.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordEntries(List<JournalEntry> entries) {
+        Map<String, UserActivityDay> deltas = new LinkedHashMap<>();
+        for (JournalEntry entry : entries) {
+            count(deltas, entry);
+        }
+        for (UserActivityDay delta : deltas.values()) {
+            if (increment(delta) == 0 && !insertIfAbsent(delta)) {
+                increment(delta);
+            }
+        }
+    }
+
+    private int increment(UserActivityDay delta) {
+        return userActivityDayRepository.increment(delta.getId(), delta.getEntryCount(), delta.getContentChars());
+    }
+
+    /**
+     * Goes through JDBC so a duplicate key fails just this statement: through the repository it would also mark
+     * the ingest transaction rollback-only.
+     */
+    private boolean insertIfAbsent(UserActivityDay day) {
+        try {
+            jdbcTemplate.update("insert into user_activity_days (id, username, epoch_day, entry_count, content_chars)"
+                            + " values (?, ?, ?, ?, ?)",
+                    day.getId(), day.getUsername(), day.getEpochDay(), day.getEntryCount(), day.getContentChars());
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private static void count(Map<String, UserActivityDay> days, JournalEntry entry) {
+        long epochDay = UserActivityDay.epochDayOf(entry.getCreatedAt());
+        days.computeIfAbsent(UserActivityDay.idFor(entry.getUsername(), epochDay),
+                id -> new UserActivityDay(entry.getUsername(), epochDay)).add(1, entry.getContentLength());
+    }
+
+    /**
+     * The user's activity from {@code from} to {@code to}, both inclusive, in day or week buckets.
+     */
+    @Transactional(readOnly = true)
+    public ActivityStats getStats(String username, LocalDate from, LocalDate to, ActivityStats.Granularity granularity) {
+        Map<LocalDate, ActivityStats.Bucket> buckets = new LinkedHashMap<>();
+        for (UserActivityDay day : userActivityDayRepository.findByUsernameAndEpochDayBetweenOrderByEpochDay(
+                username, from.toEpochDay(), to.toEpochDay())) {
+            LocalDate start = LocalDate.ofEpochDay(day.getEpochDay());
+            if (granularity == ActivityStats.Granularity.WEEK) {
+                start = start.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            }
+            buckets.computeIfAbsent(start, ActivityStats.Bucket::new).add(day.getEntryCount(), day.getContentChars());
+        }
+        return new ActivityStats(from, to, granularity, new ArrayList<>(buckets.values()));
+    }
+}
@@ -0,0 +1,380 @@
+package com.apica.interview.journalservice.store;
+
+import com.apica.interview.journalservice.model.ContentCompression;
+import com.apica.interview.journalservice.model.JournalEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One immutable file of a single user's archived entries, sorted by {@code (createdAt, id)}.
+ * <p>
+ * Layout: a header with the username, then the entries' content in deflated blocks of {@link #BLOCK_ENTRIES},
+ * then the index, then a fixed-size footer. The index holds every entry's {@code (createdAt, id, content length)}
+ * and where each block starts, so pages and summaries are located without inflating anything and a page only
+ * inflates the blocks it touches. The footer's key ranges are all that is kept in memory per segment.
+ */
+final class ArchiveSegment {
+
+    static final int MAGIC = 0x4A415243; // "JARC"
+    static final int VERSION = 1;
+    static final int BLOCK_ENTRIES = 32;
+    /**
+     * Index offset, entry count, createdAt and id ranges, magic.
+     */
+    private static final int FOOTER_BYTES = 8 + 4 + 8 + 8 + 8 + 8 + 4;
+
+    private final Path path;
+    private final String username;
+    private final long indexOffset;
+    private final int entryCount;
+    private final long minCreatedAt;
+    private final long maxCreatedAt;
+    private final long minId;
+    private final long maxId;
+
+    private ArchiveSegment(Path path, String username, long indexOffset, int entryCount,
+                           long minCreatedAt, long maxCreatedAt, long minId, long maxId) {
+        this.path = path;
+        this.username = username;
+        this.indexOffset = indexOffset;
+        this.entryCount = entryCount;
+        this.minCreatedAt = minCreatedAt;
+        this.maxCreatedAt = maxCreatedAt;
+        this.minId = minId;
+        this.maxId = maxId;
+    }
+
+    /**
+     * Writes {@code entries}, which must be a non-empty list of {@code username}'s entries sorted by
+     * {@code (createdAt, id)}, and forces the file to disk before returning.
+     */
+    static ArchiveSegment write(Path path, String username, List<JournalEntry> entries) throws IOException {
+        int count = entries.size();
+        int blocks = (count + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+        int[] blockOffsets = new int[blocks];
+        int[] blockLengths = new int[blocks];
+        int[] blockRawLengths = new int[blocks];
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        Deflater deflater = new Deflater();
+        try (FileOutputStream file = new FileOutputStream(path.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(username);
+
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            DataOutputStream rawOut = new DataOutputStream(raw);
+            byte[] buffer = new byte[64 * 1024];
+            for (int block = 0; block < blocks; block++) {
+                raw.reset();
+                for (int i = block * BLOCK_ENTRIES; i < Math.min(count, (block + 1) * BLOCK_ENTRIES); i++) {
+                    JournalEntry entry = entries.get(i);
+                    byte[] content = entry.isContentCompressed() ? entry.getDeflatedContent()
+                            : entry.getContent() != null ? entry.getContent().getBytes(StandardCharsets.UTF_8) : new byte[0];
+                    rawOut.writeByte(entry.isContentCompressed() ? ContentCompression.DEFLATE : ContentCompression.PLAIN);
+                    rawOut.writeInt(content.length);
+                    rawOut.write(content);
+                    minId = Math.min(minId, entry.getId());
+                    maxId = Math.max(maxId, entry.getId());
+                }
+                blockOffsets[block] = out.size();
+                blockRawLengths[block] = raw.size();
+                deflater.reset();
+                deflater.setInput(raw.toByteArray());
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(buffer);
+                    out.write(buffer, 0, length);
+                }
+                blockLengths[block] = out.size() - blockOffsets[block];
+            }
+
+            long indexOffset = out.size();
+            for (JournalEntry entry : entries) {
+                out.writeLong(entry.getCreatedAt().getTime());
+                out.writeLong(entry.getId());
+                out.writeInt(entry.getContentLength());
+            }
+            for (int block = 0; block < blocks; block++) {
+                out.writeInt(blockOffsets[block]);
+                out.writeInt(blockLengths[block]);
+                out.writeInt(blockRawLengths[block]);
+            }
+            long minCreatedAt = entries.get(0).getCreatedAt().getTime();
+            long maxCreatedAt = entries.get(count - 1).getCreatedAt().getTime();
+            out.writeLong(indexOffset);
+            out.writeInt(count);
+            out.writeLong(minCreatedAt);
+            out.writeLong(maxCreatedAt);
+            out.writeLong(minId);
+            out.writeLong(maxId);
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getChannel().force(true);
+            return new ArchiveSegment(path, username, indexOffset, count, minCreatedAt, maxCreatedAt, minId, maxId);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads just the header and footer.
+     */
+    static ArchiveSegment open(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() < 8 + FOOTER_BYTES || file.readInt() != MAGIC || file.readInt() != VERSION) {
+                throw new IOException("Not a journal archive segment: " + path);
+            }
+            String username = file.readUTF();
+            file.seek(file.length() - FOOTER_BYTES);
+            long indexOffset = file.readLong();
+            int count = file.readInt();
+            long minCreatedAt = file.readLong();
+            long maxCreatedAt = file.readLong();
+            long minId = file.readLong();
+            long maxId = file.readLong();
+            if (file.readInt() != MAGIC) {
+                throw new IOException("Journal archive segment " + path + " is incomplete");
+            }
+            return new ArchiveSegment(path, username, indexOffset, count, minCreatedAt, maxCreatedAt, minId, maxId);
+        }
+    }
+
+    Index readIndex() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            byte[] bytes = new byte[(int) (file.length() - FOOTER_BYTES - indexOffset)];
+            file.seek(indexOffset);
+            file.readFully(bytes);
+            return new Index(ByteBuffer.wrap(bytes), entryCount);
+        }
+    }
+
+    /**
+     * Visits the entries at positions {@code [from, to)} in ascending order, inflating only the blocks they are in.
+     */
+    void read(Index index, int from, int to, Consumer<JournalEntry> action) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        Inflater inflater = new Inflater();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            for (int block = from / BLOCK_ENTRIES; block <= (to - 1) / BLOCK_ENTRIES; block++) {
+                ByteBuffer contents = inflate(file, inflater, index, block);
+                int first = block * BLOCK_ENTRIES;
+                int last = Math.min(entryCount, first + BLOCK_ENTRIES);
+                for (int position = first; position < last; position++) {
+                    byte encoding = contents.get();
+                    byte[] content = new byte[contents.getInt()];
+                    contents.get(content);
+                    if (position >= from && position < to) {
+                        action.accept(entry(index, position, encoding, content));
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Visits the entries at {@code positions}, which must be ascending, inflating each block they are in once.
+     */
+    void read(Index index, int[] positions, Consumer<JournalEntry> action) throws IOException {
+        if (positions.length == 0) {
+            return;
+        }
+        Inflater inflater = new Inflater();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            int next = 0;
+            while (next < positions.length) {
+                int block = positions[next] / BLOCK_ENTRIES;
+                ByteBuffer contents = inflate(file, inflater, index, block);
+                int last = Math.min(entryCount, (block + 1) * BLOCK_ENTRIES);
+                for (int position = block * BLOCK_ENTRIES; position < last && next < positions.length; position++) {
+                    byte encoding = contents.get();
+                    byte[] content = new byte[contents.getInt()];
+                    contents.get(content);
+                    if (position == positions[next]) {
+                        action.accept(entry(index, position, encoding, content));
+                        next++;
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private ByteBuffer inflate(RandomAccessFile file, Inflater inflater, Index index, int block) throws IOException {
+        byte[] compressed = new byte[index.blockLengths[block]];
+        file.seek(index.blockOffsets[block]);
+        file.readFully(compressed);
+        byte[] raw = new byte[index.blockRawLengths[block]];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            inflater.inflate(raw);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block in journal archive segment " + path, e);
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    private JournalEntry entry(Index index, int position, byte encoding, byte[] content) {
+        JournalEntry entry = new JournalEntry();
+        entry.setId(index.ids[position]);
+        entry.setUsername(username);
+        entry.setCreatedAt(new Date(index.createdAt[position]));
+        if (encoding == ContentCompression.DEFLATE) {
+            entry.setDeflatedContent(content, index.contentLengths[position]);
+        } else {
+            entry.setContent(new String(content, StandardCharsets.UTF_8));
+        }
+        return entry;
+    }
+
+    StoredEntrySummary summary(Index index, int position) {
+        return new StoredEntrySummary(index.ids[position], username, new Date(index.createdAt[position]),
+                index.contentLengths[position]);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    long getMinCreatedAt() {
+        return minCreatedAt;
+    }
+
+    long getMaxCreatedAt() {
+        return maxCreatedAt;
+    }
+
+    long getMinId() {
+        return minId;
+    }
+
+    long getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * The index section of a segment; immutable, so it is shared between readers. Besides the on-disk arrays, which
+     * are in key order, it keeps the ids sorted along with their positions, so a lookup by id is a binary search.
+     */
+    static final class Index {
+        private final long[] createdAt;
+        private final long[] ids;
+        private final long[] sortedIds;
+        private final int[] sortedIdPositions;
+        private final int[] contentLengths;
+        private final int[] blockOffsets;
+        private final int[] blockLengths;
+        private final int[] blockRawLengths;
+
+        private Index(ByteBuffer buffer, int count) {
+            createdAt = new long[count];
+            ids = new long[count];
+            contentLengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                createdAt[i] = buffer.getLong();
+                ids[i] = buffer.getLong();
+                contentLengths[i] = buffer.getInt();
+            }
+            int blocks = (count + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+            blockOffsets = new int[blocks];
+            blockLengths = new int[blocks];
+            blockRawLengths = new int[blocks];
+            for (int i = 0; i < blocks; i++) {
+                blockOffsets[i] = buffer.getInt();
+                blockLengths[i] = buffer.getInt();
+                blockRawLengths[i] = buffer.getInt();
+            }
+            Integer[] byId = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                byId[i] = i;
+            }
+            Arrays.sort(byId, Comparator.comparingLong(position -> ids[position]));
+            sortedIds = new long[count];
+            sortedIdPositions = new int[count];
+            for (int i = 0; i < count; i++) {
+                sortedIdPositions[i] = byId[i];
+                sortedIds[i] = ids[byId[i]];
+            }
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        long createdAt(int position) {
+            return createdAt[position];
+        }
+
+        long id(int position) {
+            return ids[position];
+        }
+
+        int estimatedBytes() {
+            return 64 + ids.length * 32 + blockOffsets.length * 12;
+        }
+
+        /**
+         * Number of entries whose key sorts strictly before {@code (created, id)}.
+         */
+        int countBefore(long created, long id) {
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (createdAt[mid] < created || (createdAt[mid] == created && ids[mid] < id)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Position of the entry with this key, or -1.
+         */
+        int indexOf(long created, long id) {
+            int position = countBefore(created, id);
+            return position < ids.length && ids[position] == id && createdAt[position] == created ? position : -1;
+        }
+
+        /**
+         * Position of the entry with this id, or -1.
+         */
+        int indexOf(long id) {
+            int found = Arrays.binarySearch(sortedIds, id);
+            return found >= 0 ? sortedIdPositions[found] : -1;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.apica.interview.journalservice.store;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.JournalEntrySummary;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Older journal entries, moved out of {@code journal_entries} into immutable per-user {@link ArchiveSegment} files
+ * under {@code journal.archive.directory}. {@link JpaJournalStore} merges them into every read, so the table (and
+ * the heap of an in-memory database) only holds recent history.
+ * <p>
+ * Segments are written in runs: every segment of a run is forced to disk first, then the run is committed by
+ * replacing the {@code manifest} file, which names the last committed run. Segments of a later run found at startup
+ * were never committed and are deleted, since their entries are still in the table.
+ * <p>
+ * Only each segment's footer (owner, key ranges) stays in memory. Segment indexes are loaded on demand into a
+ * cache bounded by {@code journal.archive.index-cache-size}, published as
+ * {@code cache.*{cache="journal.archive.index"}}.
+ */
+@Component
+@ConditionalOnProperty(name = "journal.store.type", havingValue = "jpa", matchIfMissing = true)
+public class JournalArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalArchive.class);
+
+    private static final String MANIFEST = "manifest";
+    private static final int MANIFEST_MAGIC = 0x4A414D46; // "JAMF"
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final Comparator<Position> NEWEST_FIRST = Comparator
+            .comparingLong(Position::createdAt)
+            .thenComparingLong(Position::id)
+            .reversed();
+
+    private final Path directory;
+    private final LoadingCache<ArchiveSegment, ArchiveSegment.Index> indexes;
+    private final Map<String, List<ArchiveSegment>> segmentsByUser = new ConcurrentHashMap<>();
+    private final AtomicLong entryCount = new AtomicLong();
+    private final AtomicInteger segmentCount = new AtomicInteger();
+    private volatile long maxId;
+    private long lastRun;
+
+    public JournalArchive(@Value("${journal.archive.directory}") String directory,
+                          @Value("${journal.archive.index-cache-size}") DataSize indexCacheSize,
+                          MeterRegistry meterRegistry) {
+        this.directory = Paths.get(directory);
+        this.indexes = Caffeine.newBuilder()
+                .maximumWeight(indexCacheSize.toBytes())
+                .weigher((ArchiveSegment segment, ArchiveSegment.Index index) -> index.estimatedBytes())
+                .recordStats()
+                .build(segment -> {
+                    try {
+                        return segment.readIndex();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        CaffeineCacheMetrics.monitor(meterRegistry, indexes, "journal.archive.index");
+        Gauge.builder("journal.archive.entries", entryCount, AtomicLong::get)
+                .description("Entries in the journal archive")
+                .register(meterRegistry);
+        Gauge.builder("journal.archive.segments", segmentCount, AtomicInteger::get)
+                .description("Segment files of the journal archive")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        lastRun = readManifest();
+        for (Path file : segmentFiles()) {
+            if (runOf(file) > lastRun) {
+                log.warn("Deleting journal archive segment {} of a run that was never committed", file);
+                Files.delete(file);
+            } else {
+                publish(ArchiveSegment.open(file));
+            }
+        }
+        log.info("Journal archive opened: {} entries in {} segments", entryCount.get(), segmentCount.get());
+    }
+
+    /**
+     * Drops the whole archive. Used when the table is about to be rebuilt from a full Kafka replay, which would
+     * otherwise add every archived entry a second time.
+     */
+    public synchronized void clear() throws IOException {
+        for (Path file : segmentFiles()) {
+            Files.delete(file);
+        }
+        Files.deleteIfExists(directory.resolve(MANIFEST));
+        segmentsByUser.clear();
+        indexes.invalidateAll();
+        entryCount.set(0);
+        segmentCount.set(0);
+        maxId = 0;
+        lastRun = 0;
+    }
+
+    public synchronized Run startRun() {
+        return new Run(lastRun + 1);
+    }
+
+    /**
+     * Whether this entry is in the archive, which only costs an index lookup if it is older than the user's newest
+     * archived entry.
+     */
+    public boolean contains(String username, long id, Date createdAt) {
+        return forUser(username).contains(id, createdAt.getTime());
+    }
+
+    /**
+     * Highest id of any archived entry, or 0.
+     */
+    public long getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * Visits every archived entry, one segment at a time.
+     */
+    public void forEach(Consumer<JournalEntry> action) {
+        for (List<ArchiveSegment> segments : segmentsByUser.values()) {
+            for (ArchiveSegment segment : segments) {
+                try {
+                    segment.read(segment.readIndex(), 0, segment.getEntryCount(), action);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every archived entry's summary, reading only the segment indexes.
+     */
+    public void forEachSummary(Consumer<JournalEntrySummary> action) {
+        for (List<ArchiveSegment> segments : segmentsByUser.values()) {
+            for (ArchiveSegment segment : segments) {
+                ArchiveSegment.Index index;
+                try {
+                    index = segment.readIndex();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                for (int position = 0; position < index.size(); position++) {
+                    action.accept(segment.summary(index, position));
+                }
+            }
+        }
+    }
+
+    UserArchive forUser(String username) {
+        List<ArchiveSegment> segments = segmentsByUser.get(username);
+        return new UserArchive(segments != null ? segments : Collections.<ArchiveSegment>emptyList());
+    }
+
+    private void publish(ArchiveSegment segment) {
+        segmentsByUser.merge(segment.getUsername(), Collections.singletonList(segment), (current, added) -> {
+            List<ArchiveSegment> merged = new ArrayList<>(current.size() + 1);
+            merged.addAll(current);
+            merged.addAll(added);
+            return merged;
+        });
+        entryCount.addAndGet(segment.getEntryCount());
+        segmentCount.incrementAndGet();
+        maxId = Math.max(maxId, segment.getMaxId());
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long runOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('-')));
+    }
+
+    private long readManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.isRegularFile(manifest)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(manifest))) {
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw new IOException("Unknown journal archive manifest " + manifest);
+            }
+            return in.readLong();
+        }
+    }
+
+    /**
+     * Written next to the current manifest and moved over it, so the committed run changes atomically.
+     */
+    private void writeManifest(long run) throws IOException {
+        Path tempFile = directory.resolve(MANIFEST + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tempFile.toFile());
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeLong(run);
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(tempFile, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ArchiveSegment.Index index(ArchiveSegment segment) {
+        return indexes.get(segment);
+    }
+
+    /**
+     * Segments being written for one archiving pass; none of them is part of the archive until {@link #commit}.
+     */
+    public final class Run {
+        private final long number;
+        private final List<ArchiveSegment> written = new ArrayList<>();
+        private int entries;
+
+        private Run(long number) {
+            this.number = number;
+        }
+
+        /**
+         * Writes one segment of {@code username}'s entries, which must be sorted by {@code (createdAt, id)}.
+         */
+        public void write(String username, List<JournalEntry> userEntries) throws IOException {
+            if (userEntries.isEmpty()) {
+                return;
+            }
+            Path path = directory.resolve(String.format("%012d-%06d%s", number, written.size(), SEGMENT_SUFFIX));
+            written.add(ArchiveSegment.write(path, username, userEntries));
+            entries += userEntries.size();
+        }
+
+        public int getEntryCount() {
+            return entries;
+        }
+
+        /**
+         * Makes the run's entries part of the archive, visible to reads from here on and kept across restarts.
+         */
+        public void commit() throws IOException {
+            synchronized (JournalArchive.this) {
+                writeManifest(number);
+                lastRun = number;
+                for (ArchiveSegment segment : written) {
+                    publish(segment);
+                }
+            }
+        }
+
+        public void abort() {
+            for (ArchiveSegment segment : written) {
+                try {
+                    Files.deleteIfExists(segment.getPath());
+                } catch (IOException e) {
+                    log.warn("Could not delete uncommitted journal archive segment {}", segment.getPath(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * One user's archived segments as of the moment it was taken; later runs do not change it.
+     */
+    final class UserArchive {
+        private final List<ArchiveSegment> segments;
+
+        private UserArchive(List<ArchiveSegment> segments) {
+            this.segments = segments;
+        }
+
+        boolean isEmpty() {
+            return segments.isEmpty();
+        }
+
+        long newestCreatedAt() {
+            long newest = Long.MIN_VALUE;
+            for (ArchiveSegment segment : segments) {
+                newest = Math.max(newest, segment.getMaxCreatedAt());
+            }
+            return newest;
+        }
+
+        boolean contains(long id, long createdAt) {
+            for (ArchiveSegment segment : segments) {
+                if (createdAt >= segment.getMinCreatedAt() && createdAt <= segment.getMaxCreatedAt()
+                        && id >= segment.getMinId() && id <= segment.getMaxId()
+                        && index(segment).indexOf(createdAt, id) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<JournalEntry> findAll() {
+            List<JournalEntry> entries = new ArrayList<>();
+            for (ArchiveSegment segment : segments) {
+                read(segment, index(segment), 0, segment.getEntryCount(), entries::add);
+            }
+            return entries;
+        }
+
+        List<JournalEntry> findPageBefore(Date from, Date beforeCreatedAt, long beforeId, int limit) {
+            List<Position> positions = pagePositions(from, beforeCreatedAt, beforeId, limit);
+            Map<ArchiveSegment, int[]> ranges = new HashMap<>();
+            for (Position position : positions) {
+                int[] range = ranges.computeIfAbsent(position.segment, segment -> new int[]{position.position, position.position});
+                range[0] = Math.min(range[0], position.position);
+                range[1] = Math.max(range[1], position.position);
+            }
+            Map<Long, JournalEntry> byId = new HashMap<>();
+            for (Map.Entry<ArchiveSegment, int[]> range : ranges.entrySet()) {
+                ArchiveSegment segment = range.getKey();
+                read(segment, index(segment), range.getValue()[0], range.getValue()[1] + 1, entry -> byId.put(entry.getId(), entry));
+            }
+            List<JournalEntry> page = new ArrayList<>(positions.size());
+            for (Position position : positions) {
+                page.add(byId.get(position.id()));
+            }
+            return page;
+        }
+
+        List<JournalEntrySummary> findSummaryPageBefore(Date from, Date beforeCreatedAt, long beforeId, int limit) {
+            List<JournalEntrySummary> page = new ArrayList<>();
+            for (Position position : pagePositions(from, beforeCreatedAt, beforeId, limit)) {
+                page.add(position.segment.summary(position.index, position.position));
+            }
+            return page;
+        }
+
+        /**
+         * Only looks at the ids within each segment's id range, and reads every segment's matches in one pass.
+         */
+        List<JournalEntry> findAllById(Collection<Long> ids) {
+            long[] wanted = ids.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+            List<JournalEntry> entries = new ArrayList<>();
+            for (ArchiveSegment segment : segments) {
+                int found = Arrays.binarySearch(wanted, segment.getMinId());
+                int first = found >= 0 ? found : -found - 1;
+                if (first == wanted.length || wanted[first] > segment.getMaxId()) {
+                    continue;
+                }
+                ArchiveSegment.Index index = index(segment);
+                int[] positions = new int[wanted.length - first];
+                int count = 0;
+                for (int i = first; i < wanted.length && wanted[i] <= segment.getMaxId(); i++) {
+                    int position = index.indexOf(wanted[i]);
+                    if (position >= 0) {
+                        positions[count++] = position;
+                    }
+                }
+                positions = Arrays.copyOf(positions, count);
+                Arrays.sort(positions);
+                try {
+                    segment.read(index, positions, entries::add);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Segments can overlap in time (a later run picks up entries that arrived late), so each contributes its
+         * newest {@code limit} candidates before the keyset and the best {@code limit} of all of them win. Within a
+         * segment the winners are always a contiguous range.
+         */
+        private List<Position> pagePositions(Date from, Date beforeCreatedAt, long beforeId, int limit) {
+            List<Position> candidates = new ArrayList<>();
+            for (ArchiveSegment segment : segments) {
+                if (segment.getMaxCreatedAt() < from.getTime() || segment.getMinCreatedAt() > beforeCreatedAt.getTime()) {
+                    continue;
+                }
+                ArchiveSegment.Index index = index(segment);
+                int first = index.countBefore(from.getTime(), Long.MIN_VALUE);
+                int end = index.countBefore(beforeCreatedAt.getTime(), beforeId);
+                for (int position = end - 1; position >= Math.max(first, end - limit); position--) {
+                    candidates.add(new Position(segment, index, position));
+                }
+            }
+            candidates.sort(NEWEST_FIRST);
+            return candidates.size() > limit ? candidates.subList(0, limit) : candidates;
+        }
+
+        private void read(ArchiveSegment segment, ArchiveSegment.Index index, int from, int to, Consumer<JournalEntry> action) {
+            try {
+                segment.read(index, from, to, action);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class Position {
+        private final ArchiveSegment segment;
+        private final ArchiveSegment.Index index;
+        private final int position;
+
+        private Position(ArchiveSegment segment, ArchiveSegment.Index index, int position) {
+            this.segment = segment;
+            this.index = index;
+            this.position = position;
+        }
+
+        private long createdAt() {
+            return index.createdAt(position);
+        }
+
+        private long id() {
+            return index.id(position);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.apica.interview.journalservice.store;
+
+import com.apica.interview.journalservice.model.ConsumerOffset;
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.JournalEntrySummary;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Where journal entries are kept, together with the Kafka offsets ingestion has reached, so the two can never
+ * disagree. {@code journal.store.type} selects the implementation: {@code jpa} for the {@code journal_entries}
+ * table plus the {@link JournalArchive} older entries are moved to, or {@code log} for {@link LogJournalStore}'s
+ * memory-mapped segment files.
+ */
+public interface JournalStore {
+
+    /**
+     * Stores {@code entries}, assigning their ids, and moves ingestion to {@code offsets}; either both happen or the
+     * call throws. Runs as the last write of the ingest transaction.
+     *
+     * @return the stored entries, which are what readers will see; a store may return copies of {@code entries}
+     */
+    List<JournalEntry> append(List<JournalEntry> entries, Collection<ConsumerOffset> offsets);
+
+    /**
+     * Stored next offsets of those {@code ids} (see {@link ConsumerOffset#idFor}) that have one.
+     */
+    Map<String, Long> nextOffsets(Collection<String> ids);
+
+    List<JournalEntry> findByUsername(String username);
+
+    /**
+     * Newest-first page of at most {@code limit} of a user's entries created at or after {@code from} that sort
+     * strictly before the {@code (beforeCreatedAt, beforeId)} keyset. Costs the same however much history the
+     * user has.
+     */
+    List<JournalEntry> findPageBefore(String username, Date from, Date beforeCreatedAt, long beforeId, int limit);
+
+    /**
+     * {@link #findPageBefore} without reading any content.
+     */
+    List<JournalEntrySummary> findSummaryPageBefore(String username, Date from, Date beforeCreatedAt, long beforeId, int limit);
+
+    /**
+     * The user's entries with these ids, in no particular order; unknown ids, and those of other users, are skipped.
+     */
+    List<JournalEntry> findAllById(String username, Collection<Long> ids);
+
+    /**
+     * Visits every entry in id order, for rebuilding state derived from the entries at startup.
+     */
+    void forEach(Consumer<JournalEntry> action);
+}
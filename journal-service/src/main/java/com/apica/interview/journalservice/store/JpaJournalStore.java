@@ -0,0 +1,182 @@
+package com.apica.interview.journalservice.store;
+
+import com.apica.interview.journalservice.model.ConsumerOffset;
+import com.apica.interview.journalservice.model.ContentCompression;
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.JournalEntrySummary;
+import com.apica.interview.journalservice.repository.ConsumerOffsetRepository;
+import com.apica.interview.journalservice.repository.JournalEntryRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Entries in {@code journal_entries} and offsets in {@code consumer_offsets}, written in the ingest transaction.
+ * Depends on the snapshot service so a restored snapshot is in place before anything reads through this store.
+ * <p>
+ * Reads merge in the user's {@link JournalArchive}. The table is read first and the archive second, and rows the
+ * archive already holds are dropped, so an entry is seen exactly once even while an archiving run is between
+ * committing its segments and deleting the rows.
+ */
+@Component
+@DependsOn("journalSnapshotService")
+@ConditionalOnProperty(name = "journal.store.type", havingValue = "jpa", matchIfMissing = true)
+public class JpaJournalStore implements JournalStore {
+
+    private static final Comparator<JournalEntry> ENTRIES_NEWEST_FIRST = Comparator
+            .comparingLong((JournalEntry entry) -> entry.getCreatedAt().getTime())
+            .thenComparing(JournalEntry::getId)
+            .reversed();
+    private static final Comparator<JournalEntrySummary> SUMMARIES_NEWEST_FIRST = Comparator
+            .comparingLong((JournalEntrySummary summary) -> summary.getCreatedAt().getTime())
+            .thenComparing(JournalEntrySummary::getId)
+            .reversed();
+
+    private final JournalEntryRepository journalEntryRepository;
+    private final ConsumerOffsetRepository consumerOffsetRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final JournalArchive archive;
+
+    public JpaJournalStore(JournalEntryRepository journalEntryRepository,
+                           ConsumerOffsetRepository consumerOffsetRepository,
+                           JdbcTemplate jdbcTemplate,
+                           JournalArchive archive) {
+        this.journalEntryRepository = journalEntryRepository;
+        this.consumerOffsetRepository = consumerOffsetRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.archive = archive;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<JournalEntry> append(List<JournalEntry> entries, Collection<ConsumerOffset> offsets) {
+        List<JournalEntry> stored = journalEntryRepository.saveAll(entries);
+        consumerOffsetRepository.saveAll(offsets);
+        return stored;
+    }
+
+    @Override
+    public Map<String, Long> nextOffsets(Collection<String> ids) {
+        Map<String, Long> stored = new HashMap<>();
+        for (ConsumerOffset offset : consumerOffsetRepository.findAllById(ids)) {
+            stored.put(offset.getId(), offset.getNextOffset());
+        }
+        return stored;
+    }
+
+    @Override
+    public List<JournalEntry> findByUsername(String username) {
+        List<JournalEntry> entries = journalEntryRepository.findByUsername(username);
+        JournalArchive.UserArchive archived = archive.forUser(username);
+        if (archived.isEmpty()) {
+            return entries;
+        }
+        List<JournalEntry> merged = archived.findAll();
+        for (JournalEntry entry : entries) {
+            if (!archived.contains(entry.getId(), entry.getCreatedAt().getTime())) {
+                merged.add(entry);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * The archive is only consulted when the table cannot fill the page with entries newer than everything
+     * archived, which is never the case for the first pages of a user with recent activity.
+     */
+    @Override
+    public List<JournalEntry> findPageBefore(String username, Date from, Date beforeCreatedAt, long beforeId, int limit) {
+        List<JournalEntry> page = journalEntryRepository.findPageBefore(username, from, beforeCreatedAt, beforeId,
+                PageRequest.of(0, limit));
+        JournalArchive.UserArchive archived = archive.forUser(username);
+        if (archived.isEmpty() || (page.size() == limit
+                && page.get(limit - 1).getCreatedAt().getTime() > archived.newestCreatedAt())) {
+            return page;
+        }
+        List<JournalEntry> merged = new ArrayList<>(page.size() + limit);
+        for (JournalEntry entry : page) {
+            if (!archived.contains(entry.getId(), entry.getCreatedAt().getTime())) {
+                merged.add(entry);
+            }
+        }
+        merged.addAll(archived.findPageBefore(from, beforeCreatedAt, beforeId, limit));
+        merged.sort(ENTRIES_NEWEST_FIRST);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    @Override
+    public List<JournalEntrySummary> findSummaryPageBefore(String username, Date from, Date beforeCreatedAt, long beforeId, int limit) {
+        List<JournalEntrySummary> page = journalEntryRepository.findSummaryPageBefore(username, from, beforeCreatedAt,
+                beforeId, PageRequest.of(0, limit));
+        JournalArchive.UserArchive archived = archive.forUser(username);
+        if (archived.isEmpty() || (page.size() == limit
+                && page.get(limit - 1).getCreatedAt().getTime() > archived.newestCreatedAt())) {
+            return page;
+        }
+        List<JournalEntrySummary> merged = new ArrayList<>(page.size() + limit);
+        for (JournalEntrySummary summary : page) {
+            if (!archived.contains(summary.getId(), summary.getCreatedAt().getTime())) {
+                merged.add(summary);
+            }
+        }
+        merged.addAll(archived.findSummaryPageBefore(from, beforeCreatedAt, beforeId, limit));
+        merged.sort(SUMMARIES_NEWEST_FIRST);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    @Override
+    public List<JournalEntry> findAllById(String username, Collection<Long> ids) {
+        List<JournalEntry> entries = new ArrayList<>(ids.size());
+        Set<Long> missing = new HashSet<>(ids);
+        for (JournalEntry entry : journalEntryRepository.findAllById(ids)) {
+            if (entry.getUsername().equals(username)) {
+                entries.add(entry);
+                missing.remove(entry.getId());
+            }
+        }
+        if (!missing.isEmpty()) {
+            entries.addAll(archive.forUser(username).findAllById(missing));
+        }
+        return entries;
+    }
+
+    /**
+     * Archived entries first, then the table's rows, streamed over JDBC rather than loaded as entities so nothing is
+     * kept in a persistence context.
+     */
+    @Override
+    public void forEach(Consumer<JournalEntry> action) {
+        archive.forEach(action);
+        jdbcTemplate.query("select id, username, created_at, content_encoding, content_length, content, content_deflated"
+                + " from journal_entries order by id", (RowCallbackHandler) rs -> {
+            JournalEntry entry = new JournalEntry();
+            entry.setId(rs.getLong(1));
+            entry.setUsername(rs.getString(2));
+            entry.setCreatedAt(new Date(rs.getTimestamp(3).getTime()));
+            if (rs.getByte(4) == ContentCompression.DEFLATE) {
+                entry.setDeflatedContent(rs.getBytes(7), rs.getInt(5));
+            } else {
+                entry.setContent(rs.getString(6));
+            }
+            if (!archive.contains(entry.getUsername(), entry.getId(), entry.getCreatedAt())) {
+                action.accept(entry);
+            }
+        });
+    }
+}
@@ -0,0 +1,624 @@
+package com.apica.interview.journalservice.store;
+
+import com.apica.interview.journalservice.model.ConsumerOffset;
+import com.apica.interview.journalservice.model.ContentCompression;
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.JournalEntrySummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal store on memory-mapped segment files under {@code journal.store.log.directory}, selected
+ * with {@code journal.store.type=log}. Appending a batch is one copy into the mapped active segment; there are no
+ * SQL statements, no entity state and no per-row index maintenance in a database.
+ * <p>
+ * Every {@link #append} writes its entries followed by a commit record carrying the batch's next Kafka offsets,
+ * each record with its own CRC. On startup the segments are scanned in order: committed batches are indexed,
+ * and anything after the last intact commit record (a batch torn by a crash) is zeroed out. Offsets therefore
+ * come back exactly as far as the entries did, and Kafka replays whatever was lost.
+ * <p>
+ * The log cannot take part in the database transaction that calls {@link #append}, so a batch stays in the log
+ * even if that transaction then fails to commit. Its offsets stay with it, so ingestion does not append the batch
+ * again. The rest of that transaction is lost, though: the users' activity counts and the listeners of committed
+ * batches (search index, recent entries cache, versions, streams) miss the batch. The counts and the search index
+ * are rebuilt from the log on the next restart, and cached pages pick the batch up when they expire.
+ * <p>
+ * Segments are forced to disk every {@code journal.store.log.fsync-interval} by a background thread, or after
+ * every batch if the interval is zero. Only an OS crash or power loss can drop batches that were written but not
+ * yet forced; a process crash cannot, since the data is already in the page cache.
+ * <p>
+ * Lookups go through two in-memory indexes rebuilt by the startup scan: each entry's location by id, and per
+ * user the entries' {@code (createdAt, id)} keys in sorted order, so a page is a binary search followed by reads
+ * of just the entries on it.
+ */
+@Component
+@ConditionalOnProperty(name = "journal.store.type", havingValue = "log")
+public class LogJournalStore implements JournalStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LogJournalStore.class);
+
+    private static final byte ENTRY = 1;
+    private static final byte COMMIT = 2;
+    /**
+     * Length, type, id, createdAt, encoding, content length, username length, content byte count and CRC.
+     */
+    private static final int ENTRY_OVERHEAD = 4 + 1 + 8 + 8 + 1 + 4 + 2 + 4 + 4;
+    private static final int MIN_SEGMENT_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long fsyncIntervalMillis;
+    private final Timer fsyncTimer;
+
+    private final Object appendLock = new Object();
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final List<LogSegment> segments = new ArrayList<>();
+    private final Map<String, UserEntries> users = new HashMap<>();
+    private final Map<String, Long> offsets = new HashMap<>();
+    private long[] locationsById = new long[1024];
+    private volatile long lastId;
+
+    private ScheduledExecutorService flusher;
+
+    public LogJournalStore(@Value("${journal.store.log.directory}") String directory,
+                           @Value("${journal.store.log.segment-size}") DataSize segmentSize,
+                           @Value("${journal.store.log.fsync-interval}") Duration fsyncInterval,
+                           MeterRegistry meterRegistry) {
+        if (segmentSize.toBytes() < MIN_SEGMENT_BYTES || segmentSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("journal.store.log.segment-size must be between 64KB and 2GB");
+        }
+        this.directory = Paths.get(directory);
+        this.segmentBytes = (int) segmentSize.toBytes();
+        this.fsyncIntervalMillis = fsyncInterval.toMillis();
+        this.fsyncTimer = Timer.builder("journal.store.log.fsync")
+                .description("Time to force a journal log segment to disk")
+                .register(meterRegistry);
+        Gauge.builder("journal.store.log.entries", this, store -> store.lastId)
+                .description("Entries in the journal log")
+                .register(meterRegistry);
+        Gauge.builder("journal.store.log.segments", this, LogJournalStore::segmentCount)
+                .description("Segment files of the journal log")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+        long started = System.currentTimeMillis();
+        boolean damaged = false;
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            if (damaged) {
+                // Written after a batch that did not survive, so its offsets can no longer be trusted either.
+                log.warn("Dropping journal log segment {}, which follows a damaged one", file);
+                Files.delete(file);
+                continue;
+            }
+            if (!file.getFileName().toString().equals(segmentName(i))) {
+                throw new IOException("Journal log segment " + segmentName(i) + " is missing from " + directory);
+            }
+            LogSegment segment = LogSegment.open(file);
+            segments.add(segment);
+            damaged = !recover(i, segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(LogSegment.create(directory.resolve(segmentName(0)), segmentBytes));
+        }
+        log.info("Journal log opened: {} entries in {} segments, scanned in {} ms", lastId, segments.size(),
+                System.currentTimeMillis() - started);
+
+        if (fsyncIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-log-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::forceDirtySegments, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        synchronized (appendLock) {
+            for (LogSegment segment : segments) {
+                if (segment.isDirty()) {
+                    force(segment);
+                }
+                segment.close();
+            }
+        }
+    }
+
+    @Override
+    public List<JournalEntry> append(List<JournalEntry> entries, Collection<ConsumerOffset> nextOffsets) {
+        if (entries.isEmpty() && nextOffsets.isEmpty()) {
+            return entries;
+        }
+        synchronized (appendLock) {
+            long firstId = lastId + 1;
+            int[] entryPositions = new int[entries.size()];
+            ByteBuffer batch = encode(entries, firstId, nextOffsets, entryPositions);
+            if (batch.remaining() > segmentBytes - LogSegment.HEADER_BYTES) {
+                throw new IllegalArgumentException("A batch of " + batch.remaining() + " bytes does not fit in a journal log segment");
+            }
+            LogSegment segment = segments.get(segments.size() - 1);
+            if (batch.remaining() > segment.remaining()) {
+                segment = roll(segment);
+            }
+            int segmentIndex = segments.size() - 1;
+            int position = segment.append(batch);
+            if (fsyncIntervalMillis == 0) {
+                force(segment);
+            }
+
+            indexLock.writeLock().lock();
+            try {
+                for (int i = 0; i < entries.size(); i++) {
+                    JournalEntry entry = entries.get(i);
+                    entry.setId(firstId + i);
+                    index(firstId + i, location(segmentIndex, position + entryPositions[i]), entry.getUsername(),
+                            entry.getCreatedAt().getTime());
+                }
+                for (ConsumerOffset offset : nextOffsets) {
+                    offsets.put(offset.getId(), offset.getNextOffset());
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public Map<String, Long> nextOffsets(Collection<String> ids) {
+        Map<String, Long> stored = new HashMap<>();
+        indexLock.readLock().lock();
+        try {
+            for (String id : ids) {
+                Long nextOffset = offsets.get(id);
+                if (nextOffset != null) {
+                    stored.put(id, nextOffset);
+                }
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        return stored;
+    }
+
+    @Override
+    public List<JournalEntry> findByUsername(String username) {
+        indexLock.readLock().lock();
+        try {
+            UserEntries user = users.get(username);
+            if (user == null) {
+                return new ArrayList<>();
+            }
+            List<JournalEntry> entries = new ArrayList<>(user.size);
+            for (int i = 0; i < user.size; i++) {
+                entries.add(readEntry(locationOf(user.ids[i])));
+            }
+            return entries;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<JournalEntry> findPageBefore(String username, Date from, Date beforeCreatedAt, long beforeId, int limit) {
+        List<JournalEntry> page = new ArrayList<>();
+        indexLock.readLock().lock();
+        try {
+            UserEntries user = users.get(username);
+            if (user != null) {
+                int first = user.countBefore(from.getTime(), Long.MIN_VALUE);
+                for (int i = user.countBefore(beforeCreatedAt.getTime(), beforeId) - 1; i >= first && page.size() < limit; i--) {
+                    page.add(readEntry(locationOf(user.ids[i])));
+                }
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        return page;
+    }
+
+    @Override
+    public List<JournalEntrySummary> findSummaryPageBefore(String username, Date from, Date beforeCreatedAt, long beforeId, int limit) {
+        List<JournalEntrySummary> page = new ArrayList<>();
+        indexLock.readLock().lock();
+        try {
+            UserEntries user = users.get(username);
+            if (user != null) {
+                int first = user.countBefore(from.getTime(), Long.MIN_VALUE);
+                for (int i = user.countBefore(beforeCreatedAt.getTime(), beforeId) - 1; i >= first && page.size() < limit; i--) {
+                    page.add(readSummary(locationOf(user.ids[i])));
+                }
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        return page;
+    }
+
+    @Override
+    public List<JournalEntry> findAllById(String username, Collection<Long> ids) {
+        List<JournalEntry> entries = new ArrayList<>(ids.size());
+        indexLock.readLock().lock();
+        try {
+            for (Long id : ids) {
+                if (id != null && id >= 1 && id <= lastId) {
+                    JournalEntry entry = readEntry(locationOf(id));
+                    if (entry.getUsername().equals(username)) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the entries that were committed when the call started, without holding up appends meanwhile: records
+     * never move once written, so only the bounds are taken under the lock.
+     */
+    @Override
+    public void forEach(Consumer<JournalEntry> action) {
+        long last;
+        long[] locations;
+        List<LogSegment> visible;
+        indexLock.readLock().lock();
+        try {
+            last = lastId;
+            locations = locationsById;
+            visible = new ArrayList<>(segments);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        for (long id = 1; id <= last; id++) {
+            long location = locations[(int) (id - 1)];
+            action.accept(readEntry(visible.get(segmentOf(location)).readAt(positionOf(location))));
+        }
+    }
+
+    /**
+     * Indexes the committed batches of a segment and cuts off whatever follows the last of them.
+     *
+     * @return whether the segment ended cleanly, with no torn or uncommitted records
+     */
+    private boolean recover(int segmentIndex, LogSegment segment) {
+        ByteBuffer view = segment.readAt(0);
+        int capacity = segment.capacity();
+        List<Integer> pending = new ArrayList<>();
+        int position = LogSegment.HEADER_BYTES;
+        int committedEnd = position;
+        boolean clean;
+        while (true) {
+            if (position + 4 > capacity) {
+                clean = true;
+                break;
+            }
+            int length = view.getInt(position);
+            if (length == 0) {
+                clean = true;
+                break;
+            }
+            if (length < 5 || length > capacity - position - 4 || !checksumMatches(view, position, length)) {
+                clean = false;
+                break;
+            }
+            byte type = view.get(position + 4);
+            if (type == ENTRY) {
+                pending.add(position);
+            } else if (type == COMMIT) {
+                for (int entryPosition : pending) {
+                    ByteBuffer record = segment.readAt(entryPosition);
+                    record.position(entryPosition + 5);
+                    long id = record.getLong();
+                    long createdAt = record.getLong();
+                    record.position(record.position() + 1 + 4);
+                    String username = readString(record, record.getShort() & 0xFFFF);
+                    index(id, location(segmentIndex, entryPosition), username, createdAt);
+                }
+                pending.clear();
+                readOffsets(segment.readAt(position + 5));
+                committedEnd = position + 4 + length;
+            } else {
+                clean = false;
+                break;
+            }
+            position += 4 + length;
+        }
+        if (clean && pending.isEmpty()) {
+            segment.resumeAt(committedEnd);
+            return true;
+        }
+        log.warn("Journal log segment {} ends in a torn or uncommitted batch, truncating it at byte {}", segment.path(), committedEnd);
+        segment.truncate(committedEnd);
+        return false;
+    }
+
+    private void readOffsets(ByteBuffer commit) {
+        int count = commit.getInt();
+        for (int i = 0; i < count; i++) {
+            String topic = readString(commit, commit.getShort() & 0xFFFF);
+            int partition = commit.getInt();
+            offsets.put(ConsumerOffset.idFor(topic, partition), commit.getLong());
+        }
+    }
+
+    private static boolean checksumMatches(ByteBuffer view, int position, int length) {
+        ByteBuffer body = view.duplicate();
+        body.limit(position + length);
+        body.position(position + 4);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == view.getInt(position + length);
+    }
+
+    /**
+     * The batch's records, ready to copy: one per entry, then the commit record. {@code entryPositions} receives
+     * where each entry record starts, relative to the batch.
+     */
+    private static ByteBuffer encode(List<JournalEntry> entries, long firstId, Collection<ConsumerOffset> nextOffsets,
+                                     int[] entryPositions) {
+        byte[][] usernames = new byte[entries.size()][];
+        byte[][] contents = new byte[entries.size()][];
+        int size = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            JournalEntry entry = entries.get(i);
+            usernames[i] = entry.getUsername().getBytes(StandardCharsets.UTF_8);
+            if (usernames[i].length > 0xFFFF) {
+                throw new IllegalArgumentException("Username is too long for the journal log");
+            }
+            contents[i] = entry.isContentCompressed() ? entry.getDeflatedContent()
+                    : entry.getContent() != null ? entry.getContent().getBytes(StandardCharsets.UTF_8) : new byte[0];
+            size += ENTRY_OVERHEAD + usernames[i].length + contents[i].length;
+        }
+        List<byte[]> topics = new ArrayList<>(nextOffsets.size());
+        int commitSize = 4 + 1 + 4 + 4;
+        for (ConsumerOffset offset : nextOffsets) {
+            byte[] topic = offset.getTopic().getBytes(StandardCharsets.UTF_8);
+            topics.add(topic);
+            commitSize += 2 + topic.length + 4 + 8;
+        }
+
+        ByteBuffer batch = ByteBuffer.allocate(size + commitSize);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < entries.size(); i++) {
+            JournalEntry entry = entries.get(i);
+            int start = batch.position();
+            entryPositions[i] = start;
+            batch.putInt(ENTRY_OVERHEAD - 4 + usernames[i].length + contents[i].length);
+            batch.put(ENTRY);
+            batch.putLong(firstId + i);
+            batch.putLong(entry.getCreatedAt().getTime());
+            batch.put(entry.isContentCompressed() ? ContentCompression.DEFLATE : ContentCompression.PLAIN);
+            batch.putInt(entry.getContentLength());
+            batch.putShort((short) usernames[i].length);
+            batch.put(usernames[i]);
+            batch.putInt(contents[i].length);
+            batch.put(contents[i]);
+            putChecksum(batch, start, crc);
+        }
+        int start = batch.position();
+        batch.putInt(commitSize - 4);
+        batch.put(COMMIT);
+        batch.putInt(nextOffsets.size());
+        int t = 0;
+        for (ConsumerOffset offset : nextOffsets) {
+            byte[] topic = topics.get(t++);
+            batch.putShort((short) topic.length);
+            batch.put(topic);
+            batch.putInt(offset.getPartition());
+            batch.putLong(offset.getNextOffset());
+        }
+        putChecksum(batch, start, crc);
+        batch.flip();
+        return batch;
+    }
+
+    private static void putChecksum(ByteBuffer batch, int recordStart, CRC32 crc) {
+        crc.reset();
+        crc.update(batch.array(), recordStart + 4, batch.position() - recordStart - 4);
+        batch.putInt((int) crc.getValue());
+    }
+
+    private JournalEntry readEntry(long location) {
+        return readEntry(segments.get(segmentOf(location)).readAt(positionOf(location)));
+    }
+
+    private static JournalEntry readEntry(ByteBuffer record) {
+        record.position(record.position() + 5);
+        JournalEntry entry = new JournalEntry();
+        entry.setId(record.getLong());
+        entry.setCreatedAt(new Date(record.getLong()));
+        byte encoding = record.get();
+        int contentLength = record.getInt();
+        entry.setUsername(readString(record, record.getShort() & 0xFFFF));
+        byte[] content = new byte[record.getInt()];
+        record.get(content);
+        if (encoding == ContentCompression.DEFLATE) {
+            entry.setDeflatedContent(content, contentLength);
+        } else {
+            entry.setContent(new String(content, StandardCharsets.UTF_8));
+        }
+        return entry;
+    }
+
+    private JournalEntrySummary readSummary(long location) {
+        ByteBuffer record = segments.get(segmentOf(location)).readAt(positionOf(location));
+        record.position(record.position() + 5);
+        long id = record.getLong();
+        Date createdAt = new Date(record.getLong());
+        record.get();
+        int contentLength = record.getInt();
+        return new StoredEntrySummary(id, readString(record, record.getShort() & 0xFFFF), createdAt, contentLength);
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds a committed entry to both indexes; the caller holds the write lock or is still opening the store.
+     */
+    private void index(long id, long location, String username, long createdAt) {
+        if (id > locationsById.length) {
+            locationsById = Arrays.copyOf(locationsById, (int) Math.max(id, 2L * locationsById.length));
+        }
+        locationsById[(int) (id - 1)] = location;
+        users.computeIfAbsent(username, key -> new UserEntries()).add(createdAt, id);
+        if (id > lastId) {
+            lastId = id;
+        }
+    }
+
+    private long locationOf(long id) {
+        return locationsById[(int) (id - 1)];
+    }
+
+    private static long location(int segmentIndex, int position) {
+        return ((long) segmentIndex << 32) | position;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int positionOf(long location) {
+        return (int) location;
+    }
+
+    private LogSegment roll(LogSegment full) {
+        force(full);
+        LogSegment next;
+        try {
+            next = LogSegment.create(directory.resolve(segmentName(segments.size())), segmentBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create a journal log segment in " + directory, e);
+        }
+        indexLock.writeLock().lock();
+        try {
+            segments.add(next);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+        return next;
+    }
+
+    private void forceDirtySegments() {
+        List<LogSegment> current;
+        indexLock.readLock().lock();
+        try {
+            current = new ArrayList<>(segments);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        for (LogSegment segment : current) {
+            if (segment.isDirty()) {
+                force(segment);
+            }
+        }
+    }
+
+    private void force(LogSegment segment) {
+        fsyncTimer.record(segment::force);
+    }
+
+    private int segmentCount() {
+        indexLock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    private static String segmentName(int index) {
+        return String.format("%020d.log", index);
+    }
+
+    /**
+     * One user's entries as {@code (createdAt, id)} keys in ascending order.
+     */
+    private static final class UserEntries {
+        private long[] createdAt = new long[4];
+        private long[] ids = new long[4];
+        private int size;
+
+        private void add(long created, long id) {
+            if (size == ids.length) {
+                createdAt = Arrays.copyOf(createdAt, 2 * size);
+                ids = Arrays.copyOf(ids, 2 * size);
+            }
+            // Usually the end; only entries synced late with an older createdAt land further back.
+            int index = countBefore(created, id);
+            System.arraycopy(createdAt, index, createdAt, index + 1, size - index);
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            createdAt[index] = created;
+            ids[index] = id;
+            size++;
+        }
+
+        /**
+         * Number of entries whose key sorts strictly before {@code (created, id)}.
+         */
+        private int countBefore(long created, long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (createdAt[mid] < created || (createdAt[mid] == created && ids[mid] < id)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
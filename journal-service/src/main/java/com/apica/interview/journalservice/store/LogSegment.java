@@ -0,0 +1,133 @@
+package com.apica.interview.journalservice.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One fixed-size file of the log, mapped into memory for its whole length. Records are appended by a single
+ * writer and never change afterwards; readers work on duplicates of the mapping, so they never move the writer's
+ * position. Unused space is zeros, which is also how a reader recognises the end of the data.
+ */
+final class LogSegment {
+
+    static final int MAGIC = 0x4A4C4F47; // "JLOG"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int writePosition = HEADER_BYTES;
+    private volatile boolean dirty;
+
+    private LogSegment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static LogSegment create(Path path, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LogSegment segment = new LogSegment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.force();
+        return segment;
+    }
+
+    static LogSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Files.size(path);
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException(path + " is not a journal log segment");
+        }
+        LogSegment segment = new LogSegment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+            segment.close();
+            throw new IOException(path + " is not a journal log segment");
+        }
+        return segment;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    int remaining() {
+        return buffer.capacity() - writePosition;
+    }
+
+    /**
+     * Copies {@code records} to the end of the segment; the caller has checked that they fit.
+     *
+     * @return the position they were written at
+     */
+    int append(ByteBuffer records) {
+        int position = writePosition;
+        ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        target.put(records);
+        writePosition = target.position();
+        dirty = true;
+        return position;
+    }
+
+    /**
+     * A read-only view of the segment, positioned at {@code position}.
+     */
+    ByteBuffer readAt(int position) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.position(position);
+        return view;
+    }
+
+    /**
+     * Zeroes everything from {@code position} on, dropping records that recovery found torn or uncommitted, and
+     * makes it the new end of the data.
+     */
+    void truncate(int position) {
+        ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        byte[] zeros = new byte[64 * 1024];
+        while (target.hasRemaining()) {
+            target.put(zeros, 0, Math.min(zeros.length, target.remaining()));
+        }
+        writePosition = position;
+        dirty = true;
+        force();
+    }
+
+    /**
+     * Resumes appending at {@code position}, the end of the valid data found by recovery.
+     */
+    void resumeAt(int position) {
+        writePosition = position;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void force() {
+        dirty = false;
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
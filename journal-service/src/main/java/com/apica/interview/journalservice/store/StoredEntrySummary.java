@@ -0,0 +1,42 @@
+package com.apica.interview.journalservice.store;
+
+import com.apica.interview.journalservice.model.JournalEntrySummary;
+
+import java.util.Date;
+
+/**
+ * A {@link JournalEntrySummary} read from a store's own files rather than projected by a query.
+ */
+final class StoredEntrySummary implements JournalEntrySummary {
+    private final Long id;
+    private final String username;
+    private final Date createdAt;
+    private final int contentLength;
+
+    StoredEntrySummary(Long id, String username, Date createdAt, int contentLength) {
+        this.id = id;
+        this.username = username;
+        this.createdAt = createdAt;
+        this.contentLength = contentLength;
+    }
+
+    @Override
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public int getContentLength() {
+        return contentLength;
+    }
+}
@@ -0,0 +1,63 @@
+package com.apica.interview.journalservice.config;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JwtTokenVerifierTest {
+
+    private static final String SECRET = "sBv2rCk9YPpK+Kuj5MJKgXbBFO/5bdRUpEHmgXkGR4Q=";
+
+    private MeterRegistry meterRegistry;
+
+    private JwtTokenVerifier verifier;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        verifier = new JwtTokenVerifier(100, meterRegistry);
+    }
+
+    @Test
+    void verify_ShouldReturnSubjectAndCacheVerifiedToken() {
+        String token = token("user1", System.currentTimeMillis() + 60_000, SECRET);
+
+        assertEquals("user1", verifier.verify(token));
+        assertEquals("user1", verifier.verify(token));
+
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "jwt.verified").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "jwt.verified").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void verify_ShouldRejectTokenSignedWithAnotherKey() {
+        String token = token("user1", System.currentTimeMillis() + 60_000, "c29tZSBvdGhlciBzZWNyZXQgdGhhdCBpcyBsb25nIGVub3VnaA==");
+
+        assertNull(verifier.verify(token));
+    }
+
+    @Test
+    void verify_ShouldRejectExpiredToken() {
+        String token = token("user1", System.currentTimeMillis() - 1_000, SECRET);
+
+        assertNull(verifier.verify(token));
+        assertNull(verifier.verify("not-a-jwt"));
+    }
+
+    private static String token(String subject, long expiresAt, String secret) {
+        return Jwts.builder()
+                .setSubject(subject)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(expiresAt))
+                .signWith(Keys.hmacShaKeyFor(secret.getBytes()))
+                .compact();
+    }
+}
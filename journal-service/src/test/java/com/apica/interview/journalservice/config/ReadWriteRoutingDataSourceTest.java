@@ -0,0 +1,79 @@
+package com.apica.interview.journalservice.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Routes against two separate H2 databases that each know their own name, so a query shows which one served it.
+ */
+class ReadWriteRoutingDataSourceTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate writeTransaction;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = database("routing-primary", ReadWriteRoutingDataSource.PRIMARY);
+        DataSource replica = database("routing-replica", ReadWriteRoutingDataSource.REPLICA);
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica);
+        routing.afterPropertiesSet();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReadWriteRoutingDataSource.clearPreference();
+    }
+
+    @Test
+    void readOnlyTransactionsUseTheReplica() {
+        assertEquals(ReadWriteRoutingDataSource.REPLICA, readOnlyTransaction.execute(status -> servedBy()));
+    }
+
+    @Test
+    void writeTransactionsAndNonTransactionalCallsUseThePrimary() {
+        assertEquals(ReadWriteRoutingDataSource.PRIMARY, writeTransaction.execute(status -> servedBy()));
+        assertEquals(ReadWriteRoutingDataSource.PRIMARY, servedBy());
+    }
+
+    @Test
+    void preferPrimaryKeepsReadOnlyTransactionsOnThePrimary() {
+        ReadWriteRoutingDataSource.preferPrimary();
+
+        assertEquals(ReadWriteRoutingDataSource.PRIMARY, readOnlyTransaction.execute(status -> servedBy()));
+
+        ReadWriteRoutingDataSource.clearPreference();
+        assertEquals(ReadWriteRoutingDataSource.REPLICA, readOnlyTransaction.execute(status -> servedBy()));
+    }
+
+    private String servedBy() {
+        return jdbcTemplate.queryForObject("select name from node", String.class);
+    }
+
+    private static DataSource database(String database, String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists node (name varchar(16))");
+        jdbcTemplate.update("delete from node");
+        jdbcTemplate.update("insert into node (name) values (?)", name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,111 @@
+package com.apica.interview.journalservice.controller;
+
+import com.apica.interview.journalservice.model.JournalPage;
+import com.apica.interview.journalservice.service.JournalService;
+import com.apica.interview.journalservice.service.JournalStreamHub;
+import com.apica.interview.journalservice.service.JournalVersions;
+import com.apica.interview.journalservice.service.UserActivityService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class JournalControllerTest {
+
+    @Mock
+    private JournalService journalService;
+
+    @Mock
+    private UserActivityService userActivityService;
+
+    @Mock
+    private JournalStreamHub journalStreamHub;
+
+    @Spy
+    private JournalVersions journalVersions = new JournalVersions();
+
+    @InjectMocks
+    private JournalController journalController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        mockMvc = MockMvcBuilders.standaloneSetup(journalController)
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .build();
+        when(journalService.getEntriesPage(any(), any(), any(), any(), anyInt()))
+                .thenReturn(new JournalPage(Collections.emptyList(), null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void usersAtTheSameVersionGetDifferentEtags() throws Exception {
+        String user1Etag = getEntries("user1");
+        String user2Etag = getEntries("user2");
+
+        assertNotEquals(user1Etag, user2Etag);
+    }
+
+    @Test
+    void etagOfAnotherUserDoesNotMatch() throws Exception {
+        String user1Etag = getEntries("user1");
+
+        signIn("user2");
+        mockMvc.perform(get("/api/journals").header(HttpHeaders.IF_NONE_MATCH, user1Etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION));
+        verify(journalService).getEntriesPage(eq("user2"), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void matchingEtagIsAnsweredWithoutReadingEntries() throws Exception {
+        String etag = getEntries("user1");
+
+        mockMvc.perform(get("/api/journals").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION));
+        verify(journalService, times(1)).getEntriesPage(eq("user1"), any(), any(), any(), anyInt());
+        verify(journalService, never()).getEntriesPage(eq("user2"), any(), any(), any(), anyInt());
+    }
+
+    private String getEntries(String username) throws Exception {
+        signIn(username);
+        return mockMvc.perform(get("/api/journals"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private static void signIn(String username) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(username, null, Collections.emptyList()));
+    }
+}
@@ -0,0 +1,58 @@
+package com.apica.interview.journalservice.event;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JournalEventCodecTest {
+
+    private final JournalEventCodec codec = new JournalEventCodec();
+
+    @Test
+    void roundTrip_ShouldPreserveContentWithSeparators() {
+        JournalEntry entry = new JournalEntry();
+        entry.setUsername("user1");
+        entry.setContent("a, b} {\"c\": 'd'}\nline two, createdAt=nope");
+        entry.setCreatedAt(new Date(1728396779000L));
+
+        JournalEntry decoded = codec.decode(codec.encode(entry));
+
+        assertEquals(entry.getUsername(), decoded.getUsername());
+        assertEquals(entry.getContent(), decoded.getContent());
+        assertEquals(entry.getCreatedAt(), decoded.getCreatedAt());
+    }
+
+    @Test
+    void decode_ShouldSkipUnknownFields() {
+        JournalEntry decoded = codec.decode(
+                "{\"v\":1,\"extra\":{\"nested\":[1,2]},\"username\":\"user1\",\"content\":\"hi\",\"createdAt\":5}");
+
+        assertEquals("user1", decoded.getUsername());
+        assertEquals("hi", decoded.getContent());
+        assertEquals(5L, decoded.getCreatedAt().getTime());
+    }
+
+    @Test
+    void decode_ShouldRejectUnsupportedVersion() {
+        Exception exception = assertThrows(InvalidJournalEventException.class, () ->
+                codec.decode("{\"v\":2,\"username\":\"user1\",\"content\":\"hi\",\"createdAt\":5}"));
+
+        assertEquals("Unsupported journal event version: 2", exception.getMessage());
+    }
+
+    @Test
+    void decode_ShouldRejectMissingFields() {
+        assertThrows(InvalidJournalEventException.class, () ->
+                codec.decode("{\"v\":1,\"username\":\"user1\",\"createdAt\":5}"));
+    }
+
+    @Test
+    void decode_ShouldRejectLegacyToStringFormat() {
+        assertThrows(InvalidJournalEventException.class, () ->
+                codec.decode("JournalEntry{id=null, username='user1', content='hi', createdAt=Tue Oct 08 19:42:59 IST 2024}"));
+    }
+}
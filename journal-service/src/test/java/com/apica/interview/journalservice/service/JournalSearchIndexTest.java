@@ -0,0 +1,67 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.store.JournalStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class JournalSearchIndexTest {
+
+    private MeterRegistry meterRegistry;
+
+    private JournalSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        index = new JournalSearchIndex(mock(JournalStore.class), meterRegistry);
+        index.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(
+                entry(1L, "user1", "Went hiking in the mountains"),
+                entry(2L, "user1", "Hiking again. Hiking is great, mountains are great"),
+                entry(3L, "user1", "Quiet day at home"),
+                entry(4L, "user2", "Hiking with friends"))));
+    }
+
+    @Test
+    void search_ShouldRankByRelevanceWithinTheUsersOwnEntries() {
+        JournalSearchIndex.SearchHits hits = index.search("user1", "HIKING quiet", 0, 10);
+
+        // The rarer term weighs more, and repeating a term raises an entry's score.
+        assertEquals(3, hits.getTotalHits());
+        assertArrayEquals(new long[]{3L, 2L, 1L}, hits.getEntryIds());
+        assertTrue(meterRegistry.get("journal.search.index.bytes").gauge().value() > 0);
+    }
+
+    @Test
+    void search_ShouldPageThroughHits() {
+        JournalSearchIndex.SearchHits second = index.search("user1", "hiking", 1, 1);
+
+        assertEquals(2, second.getTotalHits());
+        assertArrayEquals(new long[]{1L}, second.getEntryIds());
+        assertEquals(0, index.search("user1", "hiking", 5, 1).getEntryIds().length);
+        assertEquals(0, index.search("nobody", "hiking", 0, 10).getTotalHits());
+    }
+
+    @Test
+    void tokenize_ShouldLowerCaseAndSplitOnNonAlphanumerics() {
+        assertEquals(Arrays.asList("dear", "diary", "today", "was", "fine", "2024"),
+                JournalSearchIndex.tokenize("Dear diary, {today} was \"FINE\" -- 2024!"));
+    }
+
+    private static JournalEntry entry(Long id, String username, String content) {
+        JournalEntry entry = new JournalEntry();
+        entry.setId(id);
+        entry.setUsername(username);
+        entry.setContent(content);
+        entry.setCreatedAt(new Date(id * 1000));
+        return entry;
+    }
+}
@@ -1,23 +1,45 @@
 package com.apica.interview.journalservice.service;
 
+import com.apica.interview.journalservice.event.InvalidJournalEventException;
+import com.apica.interview.journalservice.model.ConsumerOffset;
+import com.apica.interview.journalservice.model.JournalCursor;
 import com.apica.interview.journalservice.model.JournalEntry;
-import com.apica.interview.journalservice.repository.JournalEntryRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.apica.interview.journalservice.model.JournalPage;
+import com.apica.interview.journalservice.store.JournalStore;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
@@ -27,13 +49,39 @@ public class JournalServiceTest {
     private JournalService journalService;
 
     @Mock
-    private JournalEntryRepository journalEntryRepository;
+    private JournalStore journalStore;
+
+    @Mock
+    private RecentEntriesCache recentEntriesCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private UserActivityService userActivityService;
+
+    @Mock
+    private PoisonEventHandler poisonEventHandler;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(journalService, "compressAboveBytes", 64);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
     }
 
     @Test
@@ -49,41 +97,352 @@ public class JournalServiceTest {
         entry2.setContent("Entry 2");
         entry2.setCreatedAt(new Date());
 
-        when(journalEntryRepository.findByUsername(username)).thenReturn(Arrays.asList(entry1, entry2));
+        when(journalStore.findByUsername(username)).thenReturn(Arrays.asList(entry1, entry2));
 
         List<JournalEntry> entries = journalService.getEntriesForUser(username);
 
         assertEquals(2, entries.size());
         assertEquals("Entry 1", entries.get(0).getContent());
         assertEquals("Entry 2", entries.get(1).getContent());
-        verify(journalEntryRepository, times(1)).findByUsername(username);
+        verify(journalStore, times(1)).findByUsername(username);
     }
 
     @Test
-    void testConsumeUserEvent() throws JsonProcessingException, ParseException {
-        String event = "username='user3', content='{\"content\":\"This is my third journal entry\"}', createdAt=Tue Oct 08 19:42:59 IST 2024";
+    @SuppressWarnings("unchecked")
+    void testConsumeUserEvent() {
+        String event = "{\"v\":1,\"username\":\"user3\",\"content\":\"This is my third journal entry\",\"createdAt\":1728396779000}";
         JournalEntry expectedEntry = new JournalEntry();
         expectedEntry.setUsername("user3");
         expectedEntry.setContent("This is my third journal entry");
-        expectedEntry.setCreatedAt(new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy").parse("Tue Oct 08 19:42:59 IST 2024"));
+        expectedEntry.setCreatedAt(new Date(1728396779000L));
 
-        journalService.consumeUserEvent(event);
+        journalService.consumeJournalEvents(Collections.singletonList(record(0, event)));
 
-        ArgumentCaptor<JournalEntry> argumentCaptor = ArgumentCaptor.forClass(JournalEntry.class);
-        verify(journalEntryRepository, times(1)).save(argumentCaptor.capture());
-        JournalEntry capturedEntry = argumentCaptor.getValue();
+        ArgumentCaptor<List<JournalEntry>> argumentCaptor = ArgumentCaptor.forClass(List.class);
+        verify(journalStore, times(1)).append(argumentCaptor.capture(), anyCollection());
+        assertEquals(1, argumentCaptor.getValue().size());
+        JournalEntry capturedEntry = argumentCaptor.getValue().get(0);
 
         assertEquals(expectedEntry.getUsername(), capturedEntry.getUsername());
         assertEquals(expectedEntry.getContent(), capturedEntry.getContent());
         assertEquals(expectedEntry.getCreatedAt(), capturedEntry.getCreatedAt());
+        verify(userActivityService).recordEntries(argumentCaptor.getValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConsumeUserEvent_invalidJsonIsDeadLetteredWithoutBlockingTheBatch() {
+        ConsumerRecord<String, String> poison = record(0, "username='user3', content='invalid json', createdAt=Tue Oct 08 19:42:59 IST 2024");
+        ConsumerRecord<String, String> valid = record(1, "{\"v\":1,\"username\":\"user1\",\"content\":\"Fine\",\"createdAt\":1728396779000}");
+
+        journalService.consumeJournalEvents(Arrays.asList(poison, valid));
+
+        verify(poisonEventHandler).deadLetter(eq(poison), any(InvalidJournalEventException.class));
+        ArgumentCaptor<List<JournalEntry>> argumentCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Collection<ConsumerOffset>> offsetCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(journalStore).append(argumentCaptor.capture(), offsetCaptor.capture());
+        assertEquals(1, argumentCaptor.getValue().size());
+        assertEquals("Fine", argumentCaptor.getValue().get(0).getContent());
+        assertEquals(2L, offsetCaptor.getValue().iterator().next().getNextOffset());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConsumeJournalEvents_retriesOnlyTheRecordThatFailsToPersist() {
+        ConsumerRecord<String, String> good = record(4, "{\"v\":1,\"username\":\"user1\",\"content\":\"Good\",\"createdAt\":1728396779000}");
+        ConsumerRecord<String, String> bad = record(5, "{\"v\":1,\"username\":\"user2\",\"content\":\"Bad\",\"createdAt\":1728396790000}");
+        RuntimeException failure = new IllegalStateException("constraint violated");
+        doAnswer(invocation -> {
+            List<JournalEntry> entries = invocation.getArgument(0);
+            for (JournalEntry entry : entries) {
+                if ("Bad".equals(entry.getContent())) {
+                    throw failure;
+                }
+            }
+            return null;
+        }).when(journalStore).append(anyList(), anyCollection());
+
+        journalService.consumeJournalEvents(Arrays.asList(good, bad));
+
+        // The batch, each record on its own, then the offsets alone.
+        ArgumentCaptor<Collection<ConsumerOffset>> offsetCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(journalStore, times(4)).append(anyList(), offsetCaptor.capture());
+        verify(poisonEventHandler).retry(bad, failure);
+        verify(poisonEventHandler, never()).retry(eq(good), any());
+        assertEquals(6L, offsetCaptor.getValue().iterator().next().getNextOffset());
     }
 
     @Test
-    void testConsumeUserEvent_invalidJson() {
-        String event = "username='user3', content='invalid json', createdAt=Tue Oct 08 19:42:59 IST 2024";
+    void testConsumeJournalEvents_retriesRecordsAsNewEntitiesAndPublishesWhatWasStored() {
+        ConsumerRecord<String, String> first = record(0, "{\"v\":1,\"username\":\"user1\",\"content\":\"One\",\"createdAt\":1728396779000}");
+        ConsumerRecord<String, String> second = record(1, "{\"v\":1,\"username\":\"user1\",\"content\":\"Two\",\"createdAt\":1728396790000}");
+        List<Long> idsOnArrival = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<JournalEntry> entries = invocation.getArgument(0);
+            List<JournalEntry> stored = new ArrayList<>();
+            for (JournalEntry entry : entries) {
+                idsOnArrival.add(entry.getId());
+                // Like a rolled-back JPA batch, which leaves its ids behind on the entities.
+                entry.setId(100L + idsOnArrival.size());
+                stored.add(entry(200L + idsOnArrival.size(), entry.getUsername(), entry.getCreatedAt().getTime()));
+            }
+            if (entries.size() > 1) {
+                throw new IllegalStateException("batch failed");
+            }
+            return stored;
+        }).when(journalStore).append(anyList(), anyCollection());
+
+        journalService.consumeJournalEvents(Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList(null, null, null, null), idsOnArrival);
+        ArgumentCaptor<JournalEntriesPersistedEvent> eventCaptor = ArgumentCaptor.forClass(JournalEntriesPersistedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(eventCaptor.capture());
+        assertEquals(203L, eventCaptor.getAllValues().get(0).getEntries().get(0).getId());
+        assertEquals(204L, eventCaptor.getAllValues().get(1).getEntries().get(0).getId());
+        verify(poisonEventHandler, never()).retry(any(), any());
+    }
+
+    @Test
+    void testConsumeJournalEvents_redeliveredPollSkipsRecordsTheFallbackAlreadyStored() {
+        ConsumerRecord<String, String> first = record(0, "{\"v\":1,\"username\":\"user1\",\"content\":\"One\",\"createdAt\":1728396779000}");
+        ConsumerRecord<String, String> bad = record(1, "{\"v\":1,\"username\":\"user2\",\"content\":\"Bad\",\"createdAt\":1728396790000}");
+        ConsumerRecord<String, String> third = record(2, "{\"v\":1,\"username\":\"user1\",\"content\":\"Three\",\"createdAt\":1728396841000}");
+        Map<String, Long> storedOffsets = new HashMap<>();
+        List<String> storedContent = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<JournalEntry> entries = invocation.getArgument(0);
+            for (JournalEntry entry : entries) {
+                if ("Bad".equals(entry.getContent())) {
+                    throw new IllegalStateException("constraint violated");
+                }
+            }
+            for (JournalEntry entry : entries) {
+                storedContent.add(entry.getContent());
+            }
+            for (ConsumerOffset offset : invocation.<Collection<ConsumerOffset>>getArgument(1)) {
+                storedOffsets.put(offset.getId(), offset.getNextOffset());
+            }
+            return entries;
+        }).when(journalStore).append(anyList(), anyCollection());
+        when(journalStore.nextOffsets(anyCollection())).thenAnswer(invocation -> new HashMap<>(storedOffsets));
+        RuntimeException brokerDown = new IllegalStateException("Could not forward event to journal-events-retry-0");
+        doThrow(brokerDown).doNothing().when(poisonEventHandler).retry(eq(bad), any());
+
+        assertEquals(brokerDown, assertThrows(IllegalStateException.class, () ->
+                journalService.consumeJournalEvents(Arrays.asList(first, bad, third))));
+        // The container's error handler seeks back to the start of the poll.
+        journalService.consumeJournalEvents(Arrays.asList(first, bad, third));
+
+        assertEquals(Arrays.asList("One", "Three"), storedContent);
+        assertEquals(3L, storedOffsets.get(ConsumerOffset.idFor(JournalService.JOURNAL_EVENTS_TOPIC, 0)));
+        verify(poisonEventHandler, times(2)).retry(eq(bad), any());
+    }
+
+    @Test
+    void testConsumeJournalEvents_fallbackSkipsABatchTheStoreKeptWhenTheCommitFailed() {
+        ConsumerRecord<String, String> first = record(0, "{\"v\":1,\"username\":\"user1\",\"content\":\"One\",\"createdAt\":1728396779000}");
+        ConsumerRecord<String, String> second = record(1, "{\"v\":1,\"username\":\"user2\",\"content\":\"Two\",\"createdAt\":1728396790000}");
+        Map<String, Long> storedOffsets = new HashMap<>();
+        List<String> storedContent = new ArrayList<>();
+        // Like LogJournalStore, which keeps what it appended whatever happens to the transaction afterwards.
+        doAnswer(invocation -> {
+            List<JournalEntry> entries = invocation.getArgument(0);
+            for (JournalEntry entry : entries) {
+                storedContent.add(entry.getContent());
+            }
+            for (ConsumerOffset offset : invocation.<Collection<ConsumerOffset>>getArgument(1)) {
+                storedOffsets.put(offset.getId(), offset.getNextOffset());
+            }
+            return entries;
+        }).when(journalStore).append(anyList(), anyCollection());
+        when(journalStore.nextOffsets(anyCollection())).thenAnswer(invocation -> new HashMap<>(storedOffsets));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            throw new IllegalStateException("commit failed");
+        }).doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        journalService.consumeJournalEvents(Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList("One", "Two"), storedContent);
+        assertEquals(2L, storedOffsets.get(ConsumerOffset.idFor(JournalService.JOURNAL_EVENTS_TOPIC, 0)));
+        verify(poisonEventHandler, never()).retry(any(), any());
+    }
+
+    @Test
+    void testConsumeRetriedEvent_sendsStillFailingRecordBackToRetry() {
+        ConsumerRecord<String, String> retried = new ConsumerRecord<>("journal-events-retry-0", 0, 0L, "user1",
+                "{\"v\":1,\"username\":\"user1\",\"content\":\"Again\",\"createdAt\":1728396779000}");
+        RuntimeException failure = new IllegalStateException("still down");
+        doThrow(failure).when(journalStore).append(argThat(entries -> !entries.isEmpty()), anyCollection());
+
+        journalService.consumeRetriedEvent(retried);
+
+        verify(poisonEventHandler).retry(retried, failure);
+        verify(eventPublisher, never()).publishEvent(any());
+        // The copy on the next retry topic takes over, so this one is stored as done.
+        verify(journalStore).append(eq(Collections.<JournalEntry>emptyList()), argThat(offsets ->
+                offsets.size() == 1 && offsets.iterator().next().getNextOffset() == 1L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConsumeRetriedEvent_storesTheRetryTopicOffsetWithTheEntry() {
+        ConsumerRecord<String, String> retried = new ConsumerRecord<>("journal-events-retry-1", 0, 41L, "user1",
+                "{\"v\":1,\"username\":\"user1\",\"content\":\"Made it\",\"createdAt\":1728396779000}");
+
+        journalService.consumeRetriedEvent(retried);
+
+        ArgumentCaptor<List<JournalEntry>> entryCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Collection<ConsumerOffset>> offsetCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(journalStore).append(entryCaptor.capture(), offsetCaptor.capture());
+        assertEquals("Made it", entryCaptor.getValue().get(0).getContent());
+        ConsumerOffset offset = offsetCaptor.getValue().iterator().next();
+        assertEquals("journal-events-retry-1-0", offset.getId());
+        assertEquals(42L, offset.getNextOffset());
+    }
+
+    @Test
+    void testConsumeRetriedEvent_failedActivityWriteNeverReachesTheStore() {
+        ConsumerRecord<String, String> retried = new ConsumerRecord<>("journal-events-retry-0", 0, 0L, "user1",
+                "{\"v\":1,\"username\":\"user1\",\"content\":\"Counted\",\"createdAt\":1728396779000}");
+        RuntimeException failure = new PersistenceException("constraint violated");
+        // Surfaces when the session is flushed, not when the activity was recorded.
+        doThrow(failure).when(entityManager).flush();
+
+        journalService.consumeRetriedEvent(retried);
+
+        verify(userActivityService).recordEntries(anyList());
+        verify(journalStore, never()).append(argThat(entries -> !entries.isEmpty()), anyCollection());
+        verify(poisonEventHandler).retry(retried, failure);
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConsumeJournalEvents_persistsWholeBatchInOneCall() {
+        List<ConsumerRecord<String, String>> records = Arrays.asList(
+                record(7, "{\"v\":1,\"username\":\"user1\",\"content\":\"First\",\"createdAt\":1728396779000}"),
+                record(8, "{\"v\":1,\"username\":\"user2\",\"content\":\"Second, with {braces}\",\"createdAt\":1728396790000}"),
+                record(9, "{\"v\":1,\"username\":\"user1\",\"content\":\"Third\",\"createdAt\":1728396841000}"));
+
+        journalService.consumeJournalEvents(records);
+
+        ArgumentCaptor<List<JournalEntry>> argumentCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Collection<ConsumerOffset>> offsetCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(journalStore, times(1)).append(argumentCaptor.capture(), offsetCaptor.capture());
+        ConsumerOffset offset = offsetCaptor.getValue().iterator().next();
+        assertEquals(1, offsetCaptor.getValue().size());
+        assertEquals(10L, offset.getNextOffset());
+        verify(eventPublisher, times(1)).publishEvent(any(JournalEntriesPersistedEvent.class));
+        List<JournalEntry> saved = argumentCaptor.getValue();
+        assertEquals(3, saved.size());
+        assertEquals("user1", saved.get(0).getUsername());
+        assertEquals("Second, with {braces}", saved.get(1).getContent());
+        assertEquals("Third", saved.get(2).getContent());
+        assertEquals(3.0, meterRegistry.get("journal.ingest.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConsumeJournalEvents_compressesOnlyLongContent() {
+        StringBuilder longContent = new StringBuilder();
+        while (longContent.length() < 4000) {
+            longContent.append("Dear diary, today was much like yesterday. ");
+        }
+        List<ConsumerRecord<String, String>> records = Arrays.asList(
+                record(0, "{\"v\":1,\"username\":\"user1\",\"content\":\"Short\",\"createdAt\":1728396779000}"),
+                record(1, "{\"v\":1,\"username\":\"user1\",\"content\":\"" + longContent + "\",\"createdAt\":1728396790000}"));
+
+        journalService.consumeJournalEvents(records);
+
+        ArgumentCaptor<List<JournalEntry>> argumentCaptor = ArgumentCaptor.forClass(List.class);
+        verify(journalStore).append(argumentCaptor.capture(), anyCollection());
+        JournalEntry shortEntry = argumentCaptor.getValue().get(0);
+        JournalEntry longEntry = argumentCaptor.getValue().get(1);
+        assertFalse(shortEntry.isContentCompressed());
+        assertTrue(longEntry.isContentCompressed());
+        assertTrue(longEntry.getStoredContentBytes() < longContent.length() / 10);
+        assertEquals(longContent.toString(), longEntry.getContent());
+        assertEquals(longContent.length(), longEntry.getContentLength());
+    }
+
+    @Test
+    void testGetEntriesPage_returnsCursorWhenMoreEntriesExist() {
+        String username = "user1";
+        List<JournalEntry> newestFirst = Arrays.asList(entry(3L, username, 3000L), entry(2L, username, 2000L), entry(1L, username, 1000L));
+        when(journalStore.findPageBefore(eq(username), any(Date.class), any(Date.class), anyLong(), eq(3)))
+                .thenReturn(newestFirst);
+
+        JournalPage page = journalService.getEntriesPage(username, null, null, null, 2);
+
+        assertEquals(2, page.getEntries().size());
+        assertEquals(2L, page.getEntries().get(1).getId());
+        assertEquals("2000_2", page.getNextCursor());
+    }
+
+    @Test
+    void testGetEntriesPage_continuesAfterCursorWithinRange() {
+        String username = "user1";
+        Date from = new Date(500L);
+        Date to = new Date(5000L);
+        when(journalStore.findPageBefore(username, from, new Date(2000L), 2L, 3))
+                .thenReturn(Collections.singletonList(entry(1L, username, 1000L)));
+
+        JournalPage page = journalService.getEntriesPage(username, from, to, JournalCursor.decode("2000_2"), 2);
+
+        assertEquals(1, page.getEntries().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testGetEntriesPage_servesFirstPageFromRecentCache() {
+        JournalPage cached = new JournalPage(Collections.singletonList(entry(1L, "user1", 1000L)), null);
+        when(recentEntriesCache.covers(20)).thenReturn(true);
+        when(recentEntriesCache.firstPage("user1", 20)).thenReturn(cached);
+
+        JournalPage page = journalService.getEntriesPage("user1", null, null, null, 20);
+
+        assertEquals(cached, page);
+        verifyNoInteractions(journalStore);
+    }
+
+    @Test
+    void testOnPartitionsAssigned_resumesFromStoredOffsetsOrBeginning() {
+        TopicPartition stored = new TopicPartition("journal-events", 0);
+        TopicPartition fresh = new TopicPartition("journal-events", 1);
+        Map<TopicPartition, Long> assignments = new HashMap<>();
+        assignments.put(stored, 3L);
+        assignments.put(fresh, 0L);
+        when(journalStore.nextOffsets(anyCollection()))
+                .thenReturn(Collections.singletonMap(ConsumerOffset.idFor("journal-events", 0), 42L));
+        ConsumerSeekAware.ConsumerSeekCallback callback = mock(ConsumerSeekAware.ConsumerSeekCallback.class);
+
+        journalService.onPartitionsAssigned(assignments, callback);
+
+        verify(callback).seek("journal-events", 0, 42L);
+        verify(callback).seekToBeginning("journal-events", 1);
+    }
+
+    @Test
+    void testConsumeJournalEvents_ignoresEmptyPoll() {
+        journalService.consumeJournalEvents(Collections.emptyList());
+
+        verifyNoInteractions(journalStore, eventPublisher);
+    }
+
+    private static ConsumerRecord<String, String> record(long offset, String value) {
+        return new ConsumerRecord<>("journal-events", 0, offset, null, value);
+    }
 
-        assertThrows(RuntimeException.class, () -> {
-            journalService.consumeUserEvent(event);
-        });
+    private static JournalEntry entry(Long id, String username, long createdAt) {
+        JournalEntry entry = new JournalEntry();
+        entry.setId(id);
+        entry.setUsername(username);
+        entry.setContent("Entry " + id);
+        entry.setCreatedAt(new Date(createdAt));
+        return entry;
     }
 }
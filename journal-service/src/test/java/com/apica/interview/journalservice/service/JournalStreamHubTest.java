@@ -0,0 +1,187 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalStreamHubTest {
+
+    private final List<Runnable> sends = new ArrayList<>();
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void fullQueueDropsOldestEntriesWhenDropping() {
+        JournalStreamHub hub = hub(JournalStreamHub.Overflow.DROP, 10);
+        hub.subscribe("user1");
+
+        hub.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(
+                entry(1, "user1"), entry(2, "user1"), entry(3, "user1"))));
+
+        assertEquals(1.0, meterRegistry.get("journal.stream.dropped").counter().count());
+        assertEquals(1, hub.subscriberCount());
+        // One drain for the subscriber, however many entries were queued.
+        assertEquals(1, sends.size());
+    }
+
+    @Test
+    void fullQueueClosesStreamWhenDisconnecting() {
+        JournalStreamHub hub = hub(JournalStreamHub.Overflow.DISCONNECT, 10);
+        hub.subscribe("user1");
+        hub.subscribe("user2");
+
+        hub.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(
+                entry(1, "user1"), entry(2, "user1"), entry(3, "user1"), entry(4, "user2"))));
+
+        assertEquals(1.0, meterRegistry.get("journal.stream.disconnected").counter().count());
+        assertEquals(1, hub.subscriberCount());
+        // user2's drain, and the one that completes user1's stream.
+        assertEquals(2, sends.size());
+    }
+
+    @Test
+    void drainSendsTheGapBeforeTheEntriesThatAreLeft() {
+        JournalStreamHub hub = hub(JournalStreamHub.Overflow.DROP, Duration.ofSeconds(10));
+        hub.subscribe("user1");
+        hub.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(
+                entry(1, "user1"), entry(2, "user1"), entry(3, "user1"))));
+
+        sends.get(0).run();
+
+        RecordingEmitter emitter = emitters.get(0);
+        assertEquals(3, emitter.events.size());
+        assertEquals("event:gap\ndata:1\n\n", emitter.events.get(0));
+        assertTrue(emitter.events.get(1).startsWith("id:2\nevent:entry\n"));
+        assertTrue(emitter.events.get(2).startsWith("id:3\nevent:entry\n"));
+        assertFalse(emitter.completed);
+
+        // The drain gave its thread back, so the next batch schedules another.
+        hub.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(entry(4, "user1"))));
+        assertEquals(2, sends.size());
+    }
+
+    @Test
+    void disconnectedStreamIsCompletedByTheSenderNotTheConsumer() {
+        JournalStreamHub hub = hub(JournalStreamHub.Overflow.DISCONNECT, Duration.ofSeconds(10));
+        hub.subscribe("user1");
+
+        hub.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(
+                entry(1, "user1"), entry(2, "user1"), entry(3, "user1"))));
+
+        RecordingEmitter emitter = emitters.get(0);
+        assertFalse(emitter.completed);
+        assertEquals(1, sends.size());
+        sends.get(0).run();
+        assertTrue(emitter.completed);
+        assertTrue(emitter.events.isEmpty());
+    }
+
+    @Test
+    void streamWhoseWriteIsStalledIsDisconnectedOnceTheWriteReturns() {
+        JournalStreamHub hub = hub(JournalStreamHub.Overflow.DROP, Duration.ZERO);
+        hub.subscribe("user1");
+        RecordingEmitter emitter = emitters.get(0);
+        // The heartbeat sweep runs while the write is still in progress.
+        emitter.duringSend = hub::sendHeartbeats;
+        hub.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(entry(1, "user1"), entry(2, "user1"))));
+
+        sends.get(0).run();
+
+        assertEquals(1, emitter.events.size());
+        assertTrue(emitter.completed);
+        assertEquals(0, hub.subscriberCount());
+        assertEquals(1.0, meterRegistry.get("journal.stream.disconnected").counter().count());
+        assertEquals(1, sends.size());
+    }
+
+    @Test
+    void entriesOfUsersWithoutSubscribersAreNotQueued() {
+        JournalStreamHub hub = hub(JournalStreamHub.Overflow.DROP, 10);
+        hub.subscribe("user1");
+
+        hub.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(entry(1, "user2"))));
+
+        assertEquals(0, sends.size());
+    }
+
+    @Test
+    void subscribersBeyondTheLimitAreTurnedAway() {
+        JournalStreamHub hub = hub(JournalStreamHub.Overflow.DROP, 1);
+        hub.subscribe("user1");
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> hub.subscribe("user2"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+    }
+
+    private JournalStreamHub hub(JournalStreamHub.Overflow overflow, int maxSubscribers) {
+        return hub(overflow, Duration.ofSeconds(10), maxSubscribers);
+    }
+
+    private JournalStreamHub hub(JournalStreamHub.Overflow overflow, Duration sendTimeout) {
+        return hub(overflow, sendTimeout, 10);
+    }
+
+    private JournalStreamHub hub(JournalStreamHub.Overflow overflow, Duration sendTimeout, int maxSubscribers) {
+        return new JournalStreamHub(sends::add, 2, overflow, Duration.ofMinutes(1), sendTimeout, maxSubscribers,
+                meterRegistry) {
+            @Override
+            SseEmitter newEmitter(long timeoutMillis) {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+    }
+
+    /**
+     * Keeps what would have been written, as text with every JSON body replaced by {@code {}}.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new ArrayList<>();
+        private Runnable duringSend;
+        private boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            StringBuilder text = new StringBuilder();
+            for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                text.append(MediaType.APPLICATION_JSON.equals(part.getMediaType()) ? "{}" : part.getData());
+            }
+            events.add(text.toString());
+            if (duringSend != null) {
+                duringSend.run();
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+    }
+
+    private static JournalEntry entry(long id, String username) {
+        JournalEntry entry = new JournalEntry();
+        entry.setId(id);
+        entry.setUsername(username);
+        entry.setContent("Entry " + id);
+        entry.setCreatedAt(new Date());
+        return entry;
+    }
+}
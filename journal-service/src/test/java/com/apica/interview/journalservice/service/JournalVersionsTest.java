@@ -0,0 +1,45 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class JournalVersionsTest {
+
+    private final JournalVersions versions = new JournalVersions();
+
+    @Test
+    void batchBumpsEachOfItsUsersOnce() {
+        versions.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(
+                entry("user1"), entry("user1"), entry("user2"))));
+        versions.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(entry("user1"))));
+
+        assertEquals(2L, versions.versionOf("user1"));
+        assertEquals(1L, versions.versionOf("user2"));
+        assertEquals(0L, versions.versionOf("user3"));
+    }
+
+    @Test
+    void etagChangesWithTheVersionAndNotOtherwise() {
+        String before = versions.etagFor("user1");
+        assertEquals(before, versions.etagFor("user1"));
+        versions.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(entry("user2"))));
+        assertEquals(before, versions.etagFor("user1"));
+
+        versions.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(entry("user1"))));
+        assertNotEquals(before, versions.etagFor("user1"));
+    }
+
+    private static JournalEntry entry(String username) {
+        JournalEntry entry = new JournalEntry();
+        entry.setUsername(username);
+        entry.setContent("Entry");
+        entry.setCreatedAt(new Date());
+        return entry;
+    }
+}
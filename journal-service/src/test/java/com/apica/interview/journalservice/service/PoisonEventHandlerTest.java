@@ -0,0 +1,96 @@
+package com.apica.interview.journalservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PoisonEventHandlerTest {
+
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    private MeterRegistry meterRegistry;
+
+    private PoisonEventHandler handler;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        handler = new PoisonEventHandler(kafkaTemplate, Arrays.asList(Duration.ofSeconds(1), Duration.ofSeconds(10)), meterRegistry);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            SettableListenableFuture<SendResult<String, String>> future = new SettableListenableFuture<>();
+            future.set(null);
+            return future;
+        });
+    }
+
+    @Test
+    void retry_ShouldForwardToFirstRetryTopicWithDueTimeAndOrigin() {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("journal-events", 2, 41L, "user1", "payload");
+        long before = System.currentTimeMillis();
+
+        handler.retry(record, new IllegalStateException("db down"));
+
+        ProducerRecord<String, String> sent = captureSent();
+        assertEquals("journal-events-retry-0", sent.topic());
+        assertEquals("user1", sent.key());
+        assertEquals(1, intHeader(sent, PoisonEventHandler.ATTEMPT_HEADER));
+        assertTrue(longHeader(sent, PoisonEventHandler.NOT_BEFORE_HEADER) >= before + 1000L);
+        assertEquals("journal-events", stringHeader(sent, PoisonEventHandler.ORIGINAL_TOPIC_HEADER));
+        assertEquals(41L, longHeader(sent, PoisonEventHandler.ORIGINAL_OFFSET_HEADER));
+        assertEquals("java.lang.IllegalStateException: db down", stringHeader(sent, PoisonEventHandler.FAILURE_REASON_HEADER));
+        assertEquals(1.0, meterRegistry.counter("journal.events.retried", "reason", "IllegalStateException").count());
+    }
+
+    @Test
+    void retry_ShouldDeadLetterOnceEveryBackoffStepIsUsed() {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("journal-events-retry-1", 0, 3L, "user1", "payload");
+        record.headers().add(PoisonEventHandler.ATTEMPT_HEADER, ByteBuffer.allocate(4).putInt(2).array());
+        record.headers().add(PoisonEventHandler.ORIGINAL_TOPIC_HEADER, "journal-events".getBytes(StandardCharsets.UTF_8));
+
+        handler.retry(record, new IllegalStateException("still down"));
+
+        ProducerRecord<String, String> sent = captureSent();
+        assertEquals(PoisonEventHandler.DEAD_LETTER_TOPIC, sent.topic());
+        assertEquals(2, intHeader(sent, PoisonEventHandler.ATTEMPT_HEADER));
+        assertEquals("journal-events", stringHeader(sent, PoisonEventHandler.ORIGINAL_TOPIC_HEADER));
+        assertEquals(1.0, meterRegistry.counter("journal.events.dead-lettered", "reason", "IllegalStateException").count());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProducerRecord<String, String> captureSent() {
+        ArgumentCaptor<ProducerRecord<String, String>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(captor.capture());
+        return captor.getValue();
+    }
+
+    private static int intHeader(ProducerRecord<String, String> record, String key) {
+        return ByteBuffer.wrap(record.headers().lastHeader(key).value()).getInt();
+    }
+
+    private static long longHeader(ProducerRecord<String, String> record, String key) {
+        return ByteBuffer.wrap(record.headers().lastHeader(key).value()).getLong();
+    }
+
+    private static String stringHeader(ProducerRecord<String, String> record, String key) {
+        return new String(record.headers().lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+}
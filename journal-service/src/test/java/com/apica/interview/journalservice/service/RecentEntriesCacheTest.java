@@ -0,0 +1,96 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.JournalPage;
+import com.apica.interview.journalservice.store.JournalStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RecentEntriesCacheTest {
+
+    private JournalStore journalStore;
+
+    private RecentEntriesCache cache;
+
+    @BeforeEach
+    void setUp() {
+        journalStore = mock(JournalStore.class);
+        cache = new RecentEntriesCache(journalStore, 3, DataSize.ofMegabytes(1), Duration.ofMinutes(1),
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void firstPage_ShouldLoadOnceAndServeRepeatReadsFromCache() {
+        when(journalStore.findPageBefore(eq("user1"), any(Date.class), any(Date.class), anyLong(), anyInt()))
+                .thenReturn(new ArrayList<>(Arrays.asList(entry(2L, 2000L), entry(1L, 1000L))));
+
+        JournalPage first = cache.firstPage("user1", 3);
+        JournalPage second = cache.firstPage("user1", 1);
+
+        assertEquals(2, first.getEntries().size());
+        assertNull(first.getNextCursor());
+        assertEquals(1, second.getEntries().size());
+        assertEquals("2000_2", second.getNextCursor());
+        verify(journalStore, times(1)).findPageBefore(eq("user1"), any(Date.class), any(Date.class), anyLong(), anyInt());
+    }
+
+    @Test
+    void onEntriesPersisted_ShouldMergeNewEntriesAndKeepNewestN() {
+        when(journalStore.findPageBefore(eq("user1"), any(Date.class), any(Date.class), anyLong(), anyInt()))
+                .thenReturn(new ArrayList<>(Arrays.asList(entry(3L, 3000L), entry(2L, 2000L), entry(1L, 1000L))));
+        cache.firstPage("user1", 3);
+
+        cache.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(entry(5L, 5000L), entry(4L, 2500L))));
+        JournalPage page = cache.firstPage("user1", 3);
+
+        assertEquals(Arrays.asList(5L, 3L, 4L), Arrays.asList(
+                page.getEntries().get(0).getId(), page.getEntries().get(1).getId(), page.getEntries().get(2).getId()));
+        assertEquals("2500_4", page.getNextCursor());
+    }
+
+    @Test
+    void onEntriesPersisted_ShouldSkipEntriesTheLoadAlreadyHad() {
+        // The load ran after the batch with entry 3 committed, but before its merge.
+        when(journalStore.findPageBefore(eq("user1"), any(Date.class), any(Date.class), anyLong(), anyInt()))
+                .thenReturn(new ArrayList<>(Arrays.asList(entry(3L, 3000L), entry(1L, 1000L))));
+        cache.firstPage("user1", 3);
+
+        cache.onEntriesPersisted(new JournalEntriesPersistedEvent(Arrays.asList(entry(3L, 3000L), entry(2L, 2000L))));
+        JournalPage page = cache.firstPage("user1", 3);
+
+        assertEquals(Arrays.asList(3L, 2L, 1L), Arrays.asList(
+                page.getEntries().get(0).getId(), page.getEntries().get(1).getId(), page.getEntries().get(2).getId()));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void onEntriesPersisted_ShouldIgnoreUsersThatAreNotCached() {
+        cache.onEntriesPersisted(new JournalEntriesPersistedEvent(Collections.singletonList(entry(1L, 1000L))));
+
+        verifyNoInteractions(journalStore);
+    }
+
+    private static JournalEntry entry(Long id, long createdAt) {
+        JournalEntry entry = new JournalEntry();
+        entry.setId(id);
+        entry.setUsername("user1");
+        entry.setContent("Entry " + id);
+        entry.setCreatedAt(new Date(createdAt));
+        return entry;
+    }
+}
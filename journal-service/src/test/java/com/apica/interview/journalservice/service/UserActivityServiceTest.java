@@ -0,0 +1,100 @@
+package com.apica.interview.journalservice.service;
+
+import com.apica.interview.journalservice.model.ActivityStats;
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.UserActivityDay;
+import com.apica.interview.journalservice.repository.UserActivityDayRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class UserActivityServiceTest {
+
+    @InjectMocks
+    private UserActivityService userActivityService;
+
+    @Mock
+    private UserActivityDayRepository userActivityDayRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testRecordEntries_incrementsExistingDaysAndInsertsNewOnes() {
+        LocalDate monday = LocalDate.of(2024, 10, 7);
+        String existing = UserActivityDay.idFor("user1", monday.toEpochDay());
+        when(userActivityDayRepository.increment(eq(existing), anyLong(), anyLong())).thenReturn(1);
+
+        userActivityService.recordEntries(Arrays.asList(
+                entry("user1", monday, "one"), entry("user1", monday, "three"), entry("user1", monday.plusDays(1), "four")));
+
+        verify(userActivityDayRepository).increment(existing, 2, 8);
+        String added = UserActivityDay.idFor("user1", monday.plusDays(1).toEpochDay());
+        verify(jdbcTemplate).update(startsWith("insert into user_activity_days"),
+                eq(added), eq("user1"), eq(monday.plusDays(1).toEpochDay()), eq(1L), eq(4L));
+        verify(userActivityDayRepository, never()).save(any());
+    }
+
+    @Test
+    void testRecordEntries_addsToDayInsertedConcurrently() {
+        LocalDate monday = LocalDate.of(2024, 10, 7);
+        String id = UserActivityDay.idFor("user1", monday.toEpochDay());
+        when(userActivityDayRepository.increment(eq(id), anyLong(), anyLong())).thenReturn(0, 1);
+        when(jdbcTemplate.update(anyString(), eq(id), eq("user1"), eq(monday.toEpochDay()), eq(1L), eq(3L)))
+                .thenThrow(new DuplicateKeyException("user_activity_days"));
+
+        userActivityService.recordEntries(Arrays.asList(entry("user1", monday, "one")));
+
+        verify(userActivityDayRepository, times(2)).increment(id, 1, 3);
+    }
+
+    @Test
+    void testGetStats_rollsDaysUpIntoWeeksStartingMonday() {
+        LocalDate from = LocalDate.of(2024, 10, 1);
+        LocalDate to = LocalDate.of(2024, 10, 14);
+        when(userActivityDayRepository.findByUsernameAndEpochDayBetweenOrderByEpochDay("user1", from.toEpochDay(), to.toEpochDay()))
+                .thenReturn(Arrays.asList(day(LocalDate.of(2024, 10, 2), 3, 30), day(LocalDate.of(2024, 10, 6), 1, 10),
+                        day(LocalDate.of(2024, 10, 7), 2, 20)));
+
+        ActivityStats stats = userActivityService.getStats("user1", from, to, ActivityStats.Granularity.WEEK);
+
+        assertEquals(2, stats.getBuckets().size());
+        assertEquals(LocalDate.of(2024, 9, 30), stats.getBuckets().get(0).getStart());
+        assertEquals(4, stats.getBuckets().get(0).getEntries());
+        assertEquals(LocalDate.of(2024, 10, 7), stats.getBuckets().get(1).getStart());
+        assertEquals(2, stats.getBuckets().get(1).getEntries());
+        assertEquals(6, stats.getTotalEntries());
+        assertEquals(60, stats.getTotalContentChars());
+    }
+
+    private static JournalEntry entry(String username, LocalDate day, String content) {
+        JournalEntry entry = new JournalEntry();
+        entry.setUsername(username);
+        entry.setContent(content);
+        entry.setCreatedAt(Date.from(day.atTime(12, 0).toInstant(ZoneOffset.UTC)));
+        return entry;
+    }
+
+    private static UserActivityDay day(LocalDate date, long entries, long chars) {
+        UserActivityDay day = new UserActivityDay("user1", date.toEpochDay());
+        day.add(entries, chars);
+        return day;
+    }
+}
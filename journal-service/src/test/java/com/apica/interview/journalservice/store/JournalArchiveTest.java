@@ -0,0 +1,137 @@
+package com.apica.interview.journalservice.store;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.JournalEntrySummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalArchiveTest {
+
+    private static final Date EARLIEST = new Date(0L);
+    private static final Date LATEST = new Date(253402300799999L);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void pagesMergeOverlappingSegmentsNewestFirst() throws IOException {
+        JournalArchive archive = open();
+        List<JournalEntry> first = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            first.add(entry(i, "user1", i * 1000L, "Entry " + i));
+        }
+        JournalArchive.Run run = archive.startRun();
+        run.write("user1", first);
+        run.write("user2", Collections.singletonList(entry(101, "user2", 5000L, "Someone else")));
+        run.commit();
+        // A second run picks up an entry that arrived late, older than most of the first run.
+        JournalArchive.Run late = archive.startRun();
+        late.write("user1", Collections.singletonList(entry(150, "user1", 50500L, "Late")));
+        late.commit();
+
+        JournalArchive.UserArchive user1 = open().forUser("user1");
+        List<JournalEntry> page = user1.findPageBefore(EARLIEST, new Date(51500L), Long.MAX_VALUE, 3);
+        assertEquals(Arrays.asList(51L, 150L, 50L), ids(page));
+        assertEquals("Late", page.get(1).getContent());
+        List<JournalEntrySummary> summaries = user1.findSummaryPageBefore(new Date(99000L), LATEST, Long.MAX_VALUE, 5);
+        assertEquals(2, summaries.size());
+        assertEquals(100L, summaries.get(0).getId());
+        assertEquals("Entry 100".length(), summaries.get(0).getContentLength());
+        assertEquals(101, user1.findAll().size());
+        assertEquals("Entry 33", user1.findAllById(Arrays.asList(33L, 101L)).get(0).getContent());
+        assertEquals(1, user1.findAllById(Arrays.asList(33L, 101L)).size());
+        assertTrue(user1.contains(150L, 50500L));
+        assertFalse(user1.contains(150L, 50501L));
+        assertEquals(100000L, user1.newestCreatedAt());
+    }
+
+    @Test
+    void idsAreFoundWhateverTheirOrderInTheSegment() throws IOException {
+        JournalArchive archive = open();
+        List<JournalEntry> entries = new ArrayList<>();
+        // Ids fall as createdAt rises, across three blocks.
+        for (int i = 1; i <= 70; i++) {
+            entries.add(entry(200 - i, "user1", i * 1000L, "Entry " + (200 - i)));
+        }
+        JournalArchive.Run run = archive.startRun();
+        run.write("user1", entries);
+        run.commit();
+
+        List<JournalEntry> found = open().forUser("user1").findAllById(Arrays.asList(130L, 199L, 500L, 165L, 140L, 165L));
+
+        assertEquals(Arrays.asList(199L, 165L, 140L, 130L), ids(found));
+        assertEquals("Entry 140", found.get(2).getContent());
+    }
+
+    @Test
+    void compressedContentIsKeptAsIs() throws IOException {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 3000) {
+            content.append("A long day, written down at length. ");
+        }
+        JournalEntry compressed = entry(7, "user1", 1000L, content.toString());
+        compressed.compressContentAbove(100);
+        JournalArchive archive = open();
+        JournalArchive.Run run = archive.startRun();
+        run.write("user1", Collections.singletonList(compressed));
+        run.commit();
+
+        JournalEntry read = open().forUser("user1").findAll().get(0);
+        assertTrue(read.isContentCompressed());
+        assertEquals(content.toString(), read.getContent());
+    }
+
+    @Test
+    void segmentsOfUncommittedRunAreDeletedOnOpen() throws IOException {
+        JournalArchive archive = open();
+        JournalArchive.Run committed = archive.startRun();
+        committed.write("user1", Collections.singletonList(entry(1, "user1", 1000L, "Kept")));
+        committed.commit();
+        JournalArchive.Run abandoned = archive.startRun();
+        abandoned.write("user1", Collections.singletonList(entry(2, "user1", 2000L, "Still in the table")));
+
+        JournalArchive reopened = open();
+        assertEquals(Collections.singletonList(1L), ids(reopened.forUser("user1").findAll()));
+        assertEquals(1L, reopened.getMaxId());
+
+        reopened.clear();
+        assertTrue(open().forUser("user1").isEmpty());
+    }
+
+    private JournalArchive open() throws IOException {
+        JournalArchive archive = new JournalArchive(directory.toString(), DataSize.ofMegabytes(1), new SimpleMeterRegistry());
+        archive.open();
+        return archive;
+    }
+
+    private static List<Long> ids(List<JournalEntry> entries) {
+        List<Long> ids = new ArrayList<>();
+        for (JournalEntry entry : entries) {
+            ids.add(entry.getId());
+        }
+        return ids;
+    }
+
+    private static JournalEntry entry(long id, String username, long createdAt, String content) {
+        JournalEntry entry = new JournalEntry();
+        entry.setId(id);
+        entry.setUsername(username);
+        entry.setContent(content);
+        entry.setCreatedAt(new Date(createdAt));
+        return entry;
+    }
+}
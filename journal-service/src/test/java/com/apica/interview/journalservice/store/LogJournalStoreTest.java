@@ -0,0 +1,155 @@
+package com.apica.interview.journalservice.store;
+
+import com.apica.interview.journalservice.model.ConsumerOffset;
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.apica.interview.journalservice.model.JournalEntrySummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogJournalStoreTest {
+
+    private static final Date EARLIEST = new Date(0L);
+    private static final Date LATEST = new Date(253402300799999L);
+
+    @TempDir
+    Path directory;
+
+    private LogJournalStore store;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void appendedEntriesAndOffsetsSurviveReopening() throws IOException {
+        StringBuilder longContent = new StringBuilder();
+        while (longContent.length() < 2000) {
+            longContent.append("Dear diary, today was much like yesterday. ");
+        }
+        JournalEntry compressed = entry("user1", 2000L, longContent.toString());
+        compressed.compressContentAbove(100);
+        open();
+        store.append(Arrays.asList(entry("user1", 1000L, "First"), compressed, entry("user2", 1500L, "Other user")),
+                Collections.singletonList(new ConsumerOffset("journal-events", 0, 3L)));
+        store.append(Collections.singletonList(entry("user1", 3000L, "Third")),
+                Collections.singletonList(new ConsumerOffset("journal-events", 0, 4L)));
+
+        reopen();
+
+        List<JournalEntry> page = store.findPageBefore("user1", EARLIEST, LATEST, Long.MAX_VALUE, 2);
+        assertEquals(2, page.size());
+        assertEquals("Third", page.get(0).getContent());
+        assertEquals(4L, page.get(0).getId());
+        assertEquals(longContent.toString(), page.get(1).getContent());
+        assertTrue(page.get(1).isContentCompressed());
+        List<JournalEntry> next = store.findPageBefore("user1", EARLIEST, page.get(1).getCreatedAt(), page.get(1).getId(), 2);
+        assertEquals(1, next.size());
+        assertEquals("First", next.get(0).getContent());
+        List<JournalEntrySummary> summaries = store.findSummaryPageBefore("user1", new Date(1500L), LATEST, Long.MAX_VALUE, 10);
+        assertEquals(2, summaries.size());
+        assertEquals(longContent.length(), summaries.get(1).getContentLength());
+        assertEquals("Other user", store.findAllById("user2", Collections.singletonList(3L)).get(0).getContent());
+        assertEquals(4L, store.nextOffsets(Collections.singletonList(ConsumerOffset.idFor("journal-events", 0)))
+                .get(ConsumerOffset.idFor("journal-events", 0)));
+    }
+
+    @Test
+    void batchWithoutIntactCommitRecordIsDroppedOnRecovery() throws IOException {
+        open();
+        store.append(Collections.singletonList(entry("user1", 1000L, "Kept")),
+                Collections.singletonList(new ConsumerOffset("journal-events", 0, 1L)));
+        store.append(Collections.singletonList(entry("user1", 2000L, "Torn")),
+                Collections.singletonList(new ConsumerOffset("journal-events", 0, 2L)));
+        store.close();
+        store = null;
+        corruptLastByte(directory.resolve(String.format("%020d.log", 0)));
+
+        open();
+        assertEquals(1, store.findByUsername("user1").size());
+        assertEquals(1L, store.nextOffsets(Collections.singletonList(ConsumerOffset.idFor("journal-events", 0)))
+                .get(ConsumerOffset.idFor("journal-events", 0)));
+        store.append(Collections.singletonList(entry("user1", 3000L, "After")), Collections.<ConsumerOffset>emptyList());
+
+        reopen();
+        List<JournalEntry> entries = store.findByUsername("user1");
+        assertEquals(2, entries.size());
+        assertEquals("After", entries.get(1).getContent());
+        assertEquals(2L, entries.get(1).getId());
+    }
+
+    @Test
+    void rollsOverToNewSegmentsAndScansInIdOrder() throws IOException {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 3000) {
+            content.append("Filler for a small segment. ");
+        }
+        open();
+        for (int i = 0; i < 50; i++) {
+            store.append(Collections.singletonList(entry("user" + (i % 3), 1000L * i, content + " #" + i)),
+                    Collections.<ConsumerOffset>emptyList());
+        }
+
+        reopen();
+        List<Long> ids = new ArrayList<>();
+        store.forEach(entry -> ids.add(entry.getId()));
+        assertEquals(50, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i + 1L, ids.get(i));
+        }
+        assertEquals(content + " #49", store.findAllById("user1", Collections.singletonList(50L)).get(0).getContent());
+    }
+
+    private void open() throws IOException {
+        store = new LogJournalStore(directory.toString(), DataSize.ofKilobytes(64), Duration.ZERO, new SimpleMeterRegistry());
+        store.open();
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        open();
+    }
+
+    /**
+     * Flips the last written byte of the segment, which belongs to the checksum of the final commit record.
+     */
+    private static void corruptLastByte(Path segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long position = file.length() - 1;
+            file.seek(position);
+            while (file.read() == 0) {
+                file.seek(--position);
+            }
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+    }
+
+    private static JournalEntry entry(String username, long createdAt, String content) {
+        JournalEntry entry = new JournalEntry();
+        entry.setUsername(username);
+        entry.setContent(content);
+        entry.setCreatedAt(new Date(createdAt));
+        return entry;
+    }
+}
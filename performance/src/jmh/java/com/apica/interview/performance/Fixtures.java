@@ -0,0 +1,37 @@
+package com.apica.interview.performance;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+import java.util.Date;
+
+final class Fixtures {
+
+    /**
+     * The HMAC secret both services are configured with.
+     */
+    static final String JWT_SECRET = "sBv2rCk9YPpK+Kuj5MJKgXbBFO/5bdRUpEHmgXkGR4Q=";
+
+    private static final String WORDS = "Dear diary, today was \"fine\": {braces}, quotes and \u00fcn\u00efc\u00f6d\u00e9 included. ";
+
+    private Fixtures() {
+    }
+
+    static String content(int length) {
+        StringBuilder content = new StringBuilder(length);
+        while (content.length() < length) {
+            content.append(WORDS);
+        }
+        content.setLength(length);
+        return content.toString();
+    }
+
+    static String accessToken(String username) {
+        return Jwts.builder()
+                .setSubject(username)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60))
+                .signWith(Keys.hmacShaKeyFor(JWT_SECRET.getBytes()))
+                .compact();
+    }
+}
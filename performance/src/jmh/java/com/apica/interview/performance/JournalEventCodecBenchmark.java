@@ -0,0 +1,49 @@
+package com.apica.interview.performance;
+
+import com.apica.interview.journalservice.event.JournalEventCodec;
+import com.apica.interview.journalservice.model.JournalEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+
+/**
+ * Ingest hot path on both sides of {@code journal-events}: user-service encoding an entry into its event
+ * payload, and journal-service decoding it (what {@code JournalService.parseJournalEntryFromEvent} runs for every
+ * record).
+ */
+@State(Scope.Benchmark)
+public class JournalEventCodecBenchmark {
+
+    @Param({"64", "2048"})
+    public int contentLength;
+
+    private final JournalEventCodec decoder = new JournalEventCodec();
+    private final com.apica.interview.userservice.event.JournalEventCodec encoder =
+            new com.apica.interview.userservice.event.JournalEventCodec();
+
+    private com.apica.interview.userservice.model.JournalEntry entry;
+    private String event;
+
+    @Setup
+    public void setUp() {
+        entry = new com.apica.interview.userservice.model.JournalEntry();
+        entry.setUsername("user1");
+        entry.setContent(Fixtures.content(contentLength));
+        entry.setCreatedAt(new Date(1728396779000L));
+        event = encoder.encode(entry);
+    }
+
+    @Benchmark
+    public String encode() {
+        return encoder.encode(entry);
+    }
+
+    @Benchmark
+    public JournalEntry decode() {
+        return decoder.decode(event);
+    }
+}
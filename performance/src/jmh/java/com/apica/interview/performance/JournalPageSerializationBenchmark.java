@@ -0,0 +1,47 @@
+package com.apica.interview.performance;
+
+import com.apica.interview.journalservice.model.JournalEntry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Jackson serialization of a {@code List<JournalEntry>}, the bulk of every {@code GET /api/journals} response, at
+ * the default and maximum page sizes.
+ */
+@State(Scope.Benchmark)
+public class JournalPageSerializationBenchmark {
+
+    @Param({"50", "500"})
+    public int entries;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<JournalEntry> page;
+
+    @Setup
+    public void setUp() {
+        page = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            JournalEntry entry = new JournalEntry();
+            entry.setId((long) i);
+            entry.setUsername("user1");
+            entry.setContent(Fixtures.content(256));
+            entry.setCreatedAt(new Date(1728396779000L + i));
+            page.add(entry);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
@@ -0,0 +1,38 @@
+package com.apica.interview.performance;
+
+import com.apica.interview.journalservice.config.JwtTokenVerifier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Bearer token validation as done by journal-service's {@code JwtAuthenticationFilter} on every request: once
+ * with the verified-token cache warm, and once with it disabled so every call checks the HMAC signature.
+ */
+@State(Scope.Benchmark)
+public class JwtVerificationBenchmark {
+
+    private JwtTokenVerifier cachedVerifier;
+    private JwtTokenVerifier uncachedVerifier;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        cachedVerifier = new JwtTokenVerifier(10_000, new SimpleMeterRegistry());
+        uncachedVerifier = new JwtTokenVerifier(0, new SimpleMeterRegistry());
+        token = Fixtures.accessToken("user1");
+        cachedVerifier.verify(token);
+    }
+
+    @Benchmark
+    public String verifyCached() {
+        return cachedVerifier.verify(token);
+    }
+
+    @Benchmark
+    public String verifySignature() {
+        return uncachedVerifier.verify(token);
+    }
+}
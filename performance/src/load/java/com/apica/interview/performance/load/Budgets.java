@@ -0,0 +1,97 @@
+package com.apica.interview.performance.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The checked-in limits a run is held to. Throughput may not fall below its budget, and latency may not rise above
+ * its budget, by more than the budgets' {@code tolerance} (a fraction); no operation may fail more often than its
+ * budget allows.
+ * <p>
+ * {@link #write} replaces the budgets with a run's own results, stamped with the machine and JVM it was recorded on,
+ * so they only hold for that setup.
+ */
+final class Budgets {
+
+    private final JsonNode budgets;
+
+    private Budgets(JsonNode budgets) {
+        this.budgets = budgets;
+    }
+
+    static Budgets read(Path path) throws IOException {
+        return new Budgets(HttpJson.MAPPER.readTree(Files.newInputStream(path)));
+    }
+
+    static void write(Path path, Map<String, Object> results, double tolerance) throws IOException {
+        Runtime runtime = Runtime.getRuntime();
+        Map<String, Object> recordedOn = new LinkedHashMap<>();
+        recordedOn.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version")
+                + " (" + System.getProperty("os.arch") + ")");
+        recordedOn.put("processors", runtime.availableProcessors());
+        recordedOn.put("harnessMaxHeapMb", runtime.maxMemory() / (1024 * 1024));
+        recordedOn.put("java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+
+        Map<String, Object> budgets = new LinkedHashMap<>();
+        budgets.put("source", "measured");
+        budgets.put("recordedOn", recordedOn);
+        budgets.put("tolerance", tolerance);
+        budgets.putAll(results);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        HttpJson.MAPPER.writerWithDefaultPrettyPrinter().writeValue(path.toFile(), budgets);
+    }
+
+    boolean sameProfile(Map<String, Object> results) {
+        return budgets.path("profile").equals(HttpJson.MAPPER.valueToTree(results.get("profile")));
+    }
+
+    /**
+     * @return one line per metric over its budget, empty if there are none
+     */
+    List<String> overruns(Map<String, Object> results) {
+        JsonNode current = HttpJson.MAPPER.valueToTree(results);
+        double tolerance = budgets.path("tolerance").asDouble(0.2);
+        List<String> overruns = new ArrayList<>();
+        JsonNode ingest = budgets.path("ingest");
+        atLeast(overruns, "ingest.eventsPerSecond", ingest.path("eventsPerSecond"),
+                current.path("ingest").path("eventsPerSecond"), tolerance);
+        latencies(overruns, "ingest", ingest, current.path("ingest"), tolerance);
+        for (Iterator<Map.Entry<String, JsonNode>> operations = budgets.path("operations").fields(); operations.hasNext(); ) {
+            Map.Entry<String, JsonNode> operation = operations.next();
+            String name = "operations." + operation.getKey();
+            JsonNode now = current.path("operations").path(operation.getKey());
+            latencies(overruns, name, operation.getValue(), now, tolerance);
+            if (now.path("errors").asLong() > operation.getValue().path("errors").asLong()) {
+                overruns.add(name + ".errors: " + now.path("errors").asLong() + " > budget "
+                        + operation.getValue().path("errors").asLong());
+            }
+        }
+        return overruns;
+    }
+
+    private static void latencies(List<String> overruns, String name, JsonNode budget, JsonNode current, double tolerance) {
+        for (String percentile : new String[]{"p50Ms", "p99Ms", "p999Ms"}) {
+            atMost(overruns, name + "." + percentile, budget.path(percentile), current.path(percentile), tolerance);
+        }
+    }
+
+    private static void atLeast(List<String> overruns, String name, JsonNode budget, JsonNode current, double tolerance) {
+        if (budget.isNumber() && current.asDouble() < budget.asDouble() * (1 - tolerance)) {
+            overruns.add(String.format("%s: %.1f < budget %.1f", name, current.asDouble(), budget.asDouble()));
+        }
+    }
+
+    private static void atMost(List<String> overruns, String name, JsonNode budget, JsonNode current, double tolerance) {
+        if (budget.isNumber() && current.asDouble() > budget.asDouble() * (1 + tolerance)) {
+            overruns.add(String.format("%s: %.1f > budget %.1f", name, current.asDouble(), budget.asDouble()));
+        }
+    }
+}
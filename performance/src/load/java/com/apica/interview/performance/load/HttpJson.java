@@ -0,0 +1,94 @@
+package com.apica.interview.performance.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal blocking HTTP client over {@link HttpURLConnection}, which keeps connections alive between calls as long
+ * as every response body is read to the end.
+ */
+final class HttpJson {
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final int TIMEOUT_MILLIS = 30_000;
+
+    private HttpJson() {
+    }
+
+    static Response get(String url, String token) throws IOException {
+        return send("GET", url, token, null);
+    }
+
+    static Response post(String url, String token, Object body) throws IOException {
+        return send("POST", url, token, MAPPER.writeValueAsBytes(body));
+    }
+
+    static boolean isUp(String url) {
+        try {
+            Response response = get(url, null);
+            return response.status == 200 && response.body.contains("\"UP\"");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Response send(String method, String url, String token, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        if (token != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        return new Response(status, in != null ? readFully(in) : "");
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static final class Response {
+        final int status;
+        final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+
+        JsonNode json() throws IOException {
+            return MAPPER.readTree(body);
+        }
+    }
+}
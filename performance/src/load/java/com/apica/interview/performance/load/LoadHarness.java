@@ -0,0 +1,253 @@
+package com.apica.interview.performance.load;
+
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * End-to-end load run: an embedded Kafka broker, both services from their boot jars, and open-loop registrations,
+ * logins, entry posts and reads at the rates in {@link LoadOptions}. Client-side latencies come from the harness;
+ * produce-to-persist latency and sustained ingest throughput come from journal-service's own
+ * {@code journal.ingest.latency} timer.
+ * <p>
+ * Results are written as JSON and compared with the checked-in budgets; the process exits with status 1 if any
+ * metric is over its budget by more than the budgets' tolerance.
+ */
+public final class LoadHarness {
+
+    private static final String INGEST_LATENCY = "journal_ingest_latency_seconds";
+
+    private final LoadOptions options;
+    private final String userService;
+    private final String journalService;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicReferenceArray<String> tokens;
+    private final String content;
+
+    private LoadHarness(LoadOptions options, String userService, String journalService) {
+        this.options = options;
+        this.userService = userService;
+        this.journalService = journalService;
+        this.tokens = new AtomicReferenceArray<>(options.users);
+        StringBuilder content = new StringBuilder(options.contentLength);
+        while (content.length() < options.contentLength) {
+            content.append("Load harness entry, written to look a little like a diary. ");
+        }
+        content.setLength(options.contentLength);
+        this.content = content.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.fromSystemProperties();
+        if (options.users == 0) {
+            throw new IllegalArgumentException("load.users must be positive");
+        }
+        Path resultsFile = Paths.get(requiredProperty("load.results"));
+        Path budgetsFile = Paths.get(requiredProperty("load.budgets"));
+        Path workDir = resultsFile.toAbsolutePath().getParent();
+        Files.createDirectories(workDir);
+        Path snapshot = workDir.resolve("journal-snapshot.bin.gz");
+        // Every run starts journal-service empty.
+        Files.deleteIfExists(snapshot);
+
+        EmbeddedKafkaBroker broker = new EmbeddedKafkaBroker(1);
+        broker.afterPropertiesSet();
+        Map<String, Object> results;
+        try {
+            String bootstrapServers = "spring.kafka.bootstrap-servers=" + broker.getBrokersAsString();
+            try (ServiceProcess users = ServiceProcess.start("user-service", jar("load.userServiceJar"), workDir,
+                    bootstrapServers);
+                 ServiceProcess journals = ServiceProcess.start("journal-service", jar("load.journalServiceJar"), workDir,
+                         bootstrapServers, "journal.snapshot.path=" + snapshot)) {
+                results = new LoadHarness(options, users.baseUrl(), journals.baseUrl()).run();
+            }
+        } finally {
+            broker.destroy();
+        }
+
+        HttpJson.MAPPER.writerWithDefaultPrettyPrinter().writeValue(resultsFile.toFile(), results);
+        System.out.println(HttpJson.MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(results));
+        System.out.println("Results written to " + resultsFile);
+
+        if (LoadOptions.booleanOption("updateBudgets", false)) {
+            Budgets.write(budgetsFile, results, Double.parseDouble(LoadOptions.stringOption("tolerance", "0.25")));
+            System.out.println("Budgets replaced with this run's results: " + budgetsFile);
+            return;
+        }
+        compareWithBudgets(budgetsFile, results);
+    }
+
+    private Map<String, Object> run() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(Math.max(1, options.clientThreads));
+        RateDriver driver = new RateDriver(clients);
+        Map<String, Object> operations = new LinkedHashMap<>();
+
+        operations.put("register", driver.runAll("register", options.users, options.registrationsPerSecond,
+                this::register).toMap());
+        driver.runAll("initial-login", options.users, Math.max(1, options.registrationsPerSecond), this::login);
+
+        AtomicLong postsAccepted = new AtomicLong();
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        List<RateDriver.Stats> steady = Arrays.asList(
+                driver.drive("login", options.loginsPerSecond, start, measureFrom, end,
+                        () -> login(randomUser())),
+                driver.drive("postEntry", options.entriesPerSecond, start, measureFrom, end,
+                        () -> postEntry(randomUser(), postsAccepted)),
+                driver.drive("readEntries", options.readsPerSecond, start, measureFrom, end,
+                        () -> readEntries(randomUser())));
+
+        sleepUntil(measureFrom);
+        PrometheusHistogram ingestBefore = PrometheusHistogram.scrape(journalService, INGEST_LATENCY);
+        for (RateDriver.Stats stats : steady) {
+            stats.awaitDispatched();
+        }
+        clients.shutdown();
+        clients.awaitTermination(options.drainTimeoutSeconds, TimeUnit.SECONDS);
+        for (RateDriver.Stats stats : steady) {
+            operations.put(stats.name(), stats.toMap());
+        }
+
+        PrometheusHistogram ingestAfter = awaitIngested(postsAccepted.get());
+        long drainedAt = System.nanoTime();
+        PrometheusHistogram ingest = ingestAfter.minus(ingestBefore);
+        double seconds = (drainedAt - measureFrom) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        Map<String, Object> ingestResults = new LinkedHashMap<>();
+        ingestResults.put("posted", postsAccepted.get());
+        ingestResults.put("persisted", ingestAfter.count());
+        ingestResults.put("eventsPerSecond", ingest.count() / seconds);
+        ingestResults.put("p50Ms", ingest.quantileMillis(0.5));
+        ingestResults.put("p99Ms", ingest.quantileMillis(0.99));
+        ingestResults.put("p999Ms", ingest.quantileMillis(0.999));
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("profile", options.profile());
+        results.put("ingest", ingestResults);
+        results.put("operations", operations);
+        return results;
+    }
+
+    /**
+     * Waits until journal-service has persisted every accepted post, or the drain timeout passes.
+     */
+    private PrometheusHistogram awaitIngested(long posted) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(options.drainTimeoutSeconds);
+        PrometheusHistogram ingest = PrometheusHistogram.scrape(journalService, INGEST_LATENCY);
+        while (ingest.count() < posted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            ingest = PrometheusHistogram.scrape(journalService, INGEST_LATENCY);
+        }
+        if (ingest.count() < posted) {
+            System.err.println("Only " + ingest.count() + " of " + posted + " posted entries were persisted in time");
+        }
+        return ingest;
+    }
+
+    private boolean register(int user) throws Exception {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("username", username(user));
+        body.put("password", password(user));
+        body.put("email", username(user) + "@example.com");
+        return HttpJson.post(userService + "/api/users/register", null, body).isSuccess();
+    }
+
+    private boolean login(int user) throws Exception {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("username", username(user));
+        body.put("password", password(user));
+        HttpJson.Response response = HttpJson.post(userService + "/api/users/login", null, body);
+        if (!response.isSuccess()) {
+            return false;
+        }
+        tokens.set(user, response.json().path("accessToken").asText());
+        return true;
+    }
+
+    private boolean postEntry(int user, AtomicLong accepted) throws Exception {
+        boolean success = HttpJson.post(userService + "/api/users/journals/" + username(user), tokens.get(user),
+                Collections.singletonMap("content", content)).isSuccess();
+        if (success) {
+            accepted.incrementAndGet();
+        }
+        return success;
+    }
+
+    private boolean readEntries(int user) throws Exception {
+        return HttpJson.get(journalService + "/api/journals?limit=50", tokens.get(user)).isSuccess();
+    }
+
+    private int randomUser() {
+        return ThreadLocalRandom.current().nextInt(options.users);
+    }
+
+    private String username(int user) {
+        return "load-" + runId + "-" + user;
+    }
+
+    private String password(int user) {
+        return "password-" + runId + "-" + user;
+    }
+
+    private static void compareWithBudgets(Path budgetsFile, Map<String, Object> results) throws Exception {
+        if (!Files.isRegularFile(budgetsFile)) {
+            System.out.println("No budgets at " + budgetsFile + "; run with -Pload.updateBudgets=true to record some");
+            return;
+        }
+        Budgets budgets = Budgets.read(budgetsFile);
+        if (!budgets.sameProfile(results)) {
+            System.out.println("Not compared with the budgets: they are for a different load profile");
+            return;
+        }
+        List<String> overruns = budgets.overruns(results);
+        if (overruns.isEmpty()) {
+            System.out.println("Within the budgets in " + budgetsFile);
+            return;
+        }
+        System.err.println("Over the budgets in " + budgetsFile + ":");
+        for (String overrun : overruns) {
+            System.err.println("  " + overrun);
+        }
+        if (LoadOptions.booleanOption("failOnRegression", true)) {
+            System.exit(1);
+        }
+    }
+
+    private static void sleepUntil(long nanos) throws InterruptedException {
+        long wait = nanos - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private static File jar(String property) {
+        File jar = new File(requiredProperty(property));
+        if (!jar.isFile()) {
+            throw new IllegalStateException(jar + " does not exist; build it with bootJar first");
+        }
+        return jar;
+    }
+
+    private static String requiredProperty(String name) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            throw new IllegalStateException("System property " + name + " is not set; run through ./gradlew loadTest");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,70 @@
+package com.apica.interview.performance.load;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What a run offers the system, read from {@code load.*} system properties ({@code -Pload.<name>=<value>} on the
+ * Gradle command line). Two runs are only comparable if these match.
+ */
+final class LoadOptions {
+
+    final int users;
+    final int registrationsPerSecond;
+    final int loginsPerSecond;
+    final int entriesPerSecond;
+    final int readsPerSecond;
+    final int contentLength;
+    final int warmupSeconds;
+    final int durationSeconds;
+    final int drainTimeoutSeconds;
+    final int clientThreads;
+
+    private LoadOptions() {
+        users = intOption("users", 200);
+        registrationsPerSecond = intOption("registrationsPerSecond", 20);
+        loginsPerSecond = intOption("loginsPerSecond", 5);
+        entriesPerSecond = intOption("entriesPerSecond", 200);
+        readsPerSecond = intOption("readsPerSecond", 100);
+        contentLength = intOption("contentLength", 512);
+        warmupSeconds = intOption("warmupSeconds", 15);
+        durationSeconds = intOption("durationSeconds", 60);
+        drainTimeoutSeconds = intOption("drainTimeoutSeconds", 60);
+        clientThreads = intOption("clientThreads", 64);
+    }
+
+    static LoadOptions fromSystemProperties() {
+        return new LoadOptions();
+    }
+
+    /**
+     * The options that shape the offered load, as recorded next to results and budgets.
+     */
+    Map<String, Object> profile() {
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("users", users);
+        profile.put("registrationsPerSecond", registrationsPerSecond);
+        profile.put("loginsPerSecond", loginsPerSecond);
+        profile.put("entriesPerSecond", entriesPerSecond);
+        profile.put("readsPerSecond", readsPerSecond);
+        profile.put("contentLength", contentLength);
+        profile.put("durationSeconds", durationSeconds);
+        return profile;
+    }
+
+    static String stringOption(String name, String defaultValue) {
+        return System.getProperty("load." + name, defaultValue);
+    }
+
+    static boolean booleanOption(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(stringOption(name, Boolean.toString(defaultValue)));
+    }
+
+    private static int intOption(String name, int defaultValue) {
+        int value = Integer.parseInt(stringOption(name, Integer.toString(defaultValue)));
+        if (value < 0) {
+            throw new IllegalArgumentException("load." + name + " must not be negative");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,86 @@
+package com.apica.interview.performance.load;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cumulative bucket counts of one Micrometer timer, scraped from {@code /actuator/prometheus}. Subtracting the
+ * scrape taken when measuring started from the one taken at the end gives the distribution of exactly the
+ * measured interval, which the timer's own percentiles (a decaying window) cannot.
+ */
+final class PrometheusHistogram {
+
+    private final TreeMap<Double, Double> cumulativeByUpperBound;
+    private final double count;
+
+    private PrometheusHistogram(TreeMap<Double, Double> cumulativeByUpperBound, double count) {
+        this.cumulativeByUpperBound = cumulativeByUpperBound;
+        this.count = count;
+    }
+
+    /**
+     * @param metric the exported name, e.g. {@code journal_ingest_latency_seconds}
+     */
+    static PrometheusHistogram scrape(String baseUrl, String metric) throws IOException {
+        HttpJson.Response response = HttpJson.get(baseUrl + "/actuator/prometheus", null);
+        if (!response.isSuccess()) {
+            throw new IOException("Scraping " + baseUrl + " returned " + response.status);
+        }
+        TreeMap<Double, Double> buckets = new TreeMap<>();
+        double count = 0;
+        for (String line : response.body.split("\n")) {
+            if (line.startsWith(metric + "_bucket{")) {
+                int le = line.indexOf("le=\"") + 4;
+                String bound = line.substring(le, line.indexOf('"', le));
+                double upperBound = "+Inf".equals(bound) ? Double.POSITIVE_INFINITY : Double.parseDouble(bound);
+                buckets.merge(upperBound, value(line), Double::sum);
+            } else if (line.startsWith(metric + "_count")) {
+                count += value(line);
+            }
+        }
+        return new PrometheusHistogram(buckets, count);
+    }
+
+    private static double value(String line) {
+        return Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+    }
+
+    long count() {
+        return (long) count;
+    }
+
+    PrometheusHistogram minus(PrometheusHistogram earlier) {
+        TreeMap<Double, Double> buckets = new TreeMap<>();
+        for (Map.Entry<Double, Double> bucket : cumulativeByUpperBound.entrySet()) {
+            buckets.put(bucket.getKey(), bucket.getValue() - earlier.cumulativeByUpperBound.getOrDefault(bucket.getKey(), 0.0));
+        }
+        return new PrometheusHistogram(buckets, count - earlier.count);
+    }
+
+    /**
+     * The quantile in milliseconds, interpolated linearly within its bucket the way Prometheus'
+     * {@code histogram_quantile} does.
+     */
+    double quantileMillis(double quantile) {
+        if (count <= 0) {
+            return 0;
+        }
+        double rank = quantile * count;
+        double lowerBound = 0;
+        double below = 0;
+        for (Map.Entry<Double, Double> bucket : cumulativeByUpperBound.entrySet()) {
+            if (bucket.getValue() >= rank) {
+                if (Double.isInfinite(bucket.getKey())) {
+                    return lowerBound * 1000;
+                }
+                double inBucket = bucket.getValue() - below;
+                double fraction = inBucket > 0 ? (rank - below) / inBucket : 1;
+                return (lowerBound + (bucket.getKey() - lowerBound) * fraction) * 1000;
+            }
+            lowerBound = bucket.getKey();
+            below = bucket.getValue();
+        }
+        return lowerBound * 1000;
+    }
+}
@@ -0,0 +1,156 @@
+package com.apica.interview.performance.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load: starts an operation at fixed intervals whether or not earlier ones have finished, and measures
+ * each from when it was due rather than when a client thread got to it. A system that falls behind therefore
+ * shows up as latency instead of quietly lowering the offered rate.
+ */
+final class RateDriver {
+
+    interface Operation {
+        /**
+         * @return whether the call succeeded
+         */
+        boolean run() throws Exception;
+    }
+
+    interface IndexedOperation {
+        boolean run(int index) throws Exception;
+    }
+
+    private static final long MAX_TRACKED_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final ExecutorService clients;
+
+    RateDriver(ExecutorService clients) {
+        this.clients = clients;
+    }
+
+    /**
+     * Offers {@code perSecond} calls of {@code operation} from {@code startNanos} to {@code endNanos} on a thread of
+     * its own; only calls due at or after {@code measureFromNanos} are recorded in the returned stats.
+     */
+    Stats drive(String name, int perSecond, long startNanos, long measureFromNanos, long endNanos, Operation operation) {
+        Stats stats = new Stats(name, TimeUnit.NANOSECONDS.toSeconds(endNanos - measureFromNanos));
+        if (perSecond == 0) {
+            return stats;
+        }
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / perSecond;
+        Thread dispatcher = new Thread(() -> {
+            for (long due = startNanos; due < endNanos; due += intervalNanos) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                long dueAt = due;
+                boolean measured = due >= measureFromNanos;
+                clients.execute(() -> call(operation, dueAt, measured ? stats : null));
+            }
+        }, "load-" + name);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        stats.dispatcher = dispatcher;
+        return stats;
+    }
+
+    /**
+     * Runs {@code operation} {@code count} times as fast as {@code perSecond} allows, waiting for all of them.
+     */
+    Stats runAll(String name, int count, int perSecond, IndexedOperation operation) throws InterruptedException {
+        long start = System.nanoTime();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, perSecond);
+        Stats stats = new Stats(name, 0);
+        CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            long due = start + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int index = i;
+            clients.execute(() -> {
+                try {
+                    call(() -> operation.run(index), due, stats);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        stats.seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        return stats;
+    }
+
+    private static void call(Operation operation, long dueNanos, Stats stats) {
+        boolean success;
+        try {
+            success = operation.run();
+        } catch (Exception e) {
+            success = false;
+        }
+        if (stats != null) {
+            stats.record(System.nanoTime() - dueNanos, success);
+        }
+    }
+
+    static final class Stats {
+        private final String name;
+        private final Histogram latencyMicros = new ConcurrentHistogram(MAX_TRACKED_MICROS, 3);
+        private final AtomicLong errors = new AtomicLong();
+        private long seconds;
+        private Thread dispatcher;
+
+        private Stats(String name, long seconds) {
+            this.name = name;
+            this.seconds = seconds;
+        }
+
+        private void record(long nanos, boolean success) {
+            latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_TRACKED_MICROS));
+            if (!success) {
+                errors.incrementAndGet();
+            }
+        }
+
+        String name() {
+            return name;
+        }
+
+        long count() {
+            return latencyMicros.getTotalCount();
+        }
+
+        void awaitDispatched() throws InterruptedException {
+            if (dispatcher != null) {
+                dispatcher.join();
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count());
+            map.put("errors", errors.get());
+            map.put("perSecond", seconds > 0 ? (double) count() / seconds : 0.0);
+            map.put("p50Ms", percentileMillis(50));
+            map.put("p99Ms", percentileMillis(99));
+            map.put("p999Ms", percentileMillis(99.9));
+            map.put("maxMs", latencyMicros.getMaxValue() / 1000.0);
+            return map;
+        }
+
+        private double percentileMillis(double percentile) {
+            return latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.apica.interview.performance.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One of the services, running from its boot jar in a JVM of its own, so the two keep their own
+ * {@code application.properties}, heaps and GC and the harness does not share a heap with what it measures.
+ */
+final class ServiceProcess implements AutoCloseable {
+
+    private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(3);
+
+    private final String name;
+    private final Process process;
+    private final int port;
+
+    private ServiceProcess(String name, Process process, int port) {
+        this.name = name;
+        this.process = process;
+        this.port = port;
+    }
+
+    /**
+     * Starts the jar on a free port, logging to {@code <logDir>/<name>.log}, and waits until its health endpoint
+     * is up.
+     */
+    static ServiceProcess start(String name, File jar, Path logDir, String... properties) throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(Arrays.asList(LoadOptions.stringOption("serviceJvmArgs", "-Xmx1g").trim().split("\\s+")));
+        command.add("-jar");
+        command.add(jar.getPath());
+        command.add("--server.port=" + port);
+        for (String property : properties) {
+            command.add("--" + property);
+        }
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logDir.resolve(name + ".log").toFile())
+                .start();
+        ServiceProcess service = new ServiceProcess(name, process, port);
+        try {
+            service.awaitHealthy();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            service.close();
+            throw e;
+        }
+        return service;
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + port;
+    }
+
+    private void awaitHealthy() throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException(name + " exited with " + process.exitValue() + " during startup, see its log");
+            }
+            if (HttpJson.isUp(baseUrl() + "/actuator/health")) {
+                return;
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException(name + " did not become healthy within " + STARTUP_TIMEOUT_MILLIS + " ms");
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.apica.interview.userservice.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the wrapped (BCrypt) encoder on a fixed pool of {@code user.password.hash-threads} threads in front of a
+ * queue of {@code user.password.queue-capacity}. When the queue is full, or a hash is not done within
+ * {@code user.password.timeout}, the request fails fast with 503 instead of holding on to its servlet thread, so a
+ * burst of logins or registrations leaves Tomcat threads free for everything else.
+ * <p>
+ * Only the caller gives up on a timeout. BCrypt does not check for interrupts, so a hash that has started runs to
+ * the end and keeps its pool thread until then, which is why the bound is threads plus queue, not requests waiting.
+ * A hash still queued when its caller times out is taken off the queue and never runs.
+ * <p>
+ * Published as {@code password.hash.queue.depth}, {@code password.hash.duration{operation=encode|matches}} and
+ * {@code password.hash.rejected{reason=queue-full|timeout}}.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, Duration timeout,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new HashThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutMillis = timeout.toMillis();
+        this.encodeTimer = meterRegistry.timer("password.hash.duration", "operation", "encode");
+        this.matchesTimer = meterRegistry.timer("password.hash.duration", "operation", "matches");
+        this.rejectedQueueFull = meterRegistry.counter("password.hash.rejected", "reason", "queue-full");
+        this.rejectedTimeout = meterRegistry.counter("password.hash.rejected", "reason", "timeout");
+        meterRegistry.gauge("password.hash.queue.depth", executor, e -> e.getQueue().size());
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(() -> encodeTimer.recordCallable(() -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> matchesTimer.recordCallable(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T submit(Callable<T> hash) {
+        Future<T> future;
+        try {
+            future = executor.submit(hash);
+        } catch (RejectedExecutionException e) {
+            rejectedQueueFull.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many password checks in progress");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            abandon(future);
+            rejectedTimeout.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Password check timed out");
+        } catch (InterruptedException e) {
+            abandon(future);
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Password check interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Frees the queue slot of a hash nobody waits for any more. One that already started cannot be stopped.
+     */
+    private void abandon(Future<?> future) {
+        if (future instanceof Runnable) {
+            executor.remove((Runnable) future);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class HashThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "password-hash-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
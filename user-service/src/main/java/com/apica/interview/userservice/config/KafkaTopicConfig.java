@@ -0,0 +1,33 @@
+package com.apica.interview.userservice.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+/**
+ * Declares the topics user-service publishes to. The partition count caps how many journal-service consumers
+ * can ingest {@code journal-events} in parallel, since events are keyed by username and each partition is consumed in order.
+ */
+@Configuration
+public class KafkaTopicConfig {
+
+    @Bean
+    public NewTopic userEventsTopic(@Value("${user.kafka.user-events.partitions}") int partitions,
+                                    @Value("${user.kafka.replication-factor}") short replicationFactor) {
+        return TopicBuilder.name("user-events")
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    @Bean
+    public NewTopic journalEventsTopic(@Value("${user.kafka.journal-events.partitions}") int partitions,
+                                       @Value("${user.kafka.replication-factor}") short replicationFactor) {
+        return TopicBuilder.name("journal-events")
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+}
@@ -1,5 +1,7 @@
 package com.apica.interview.userservice.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -10,6 +12,8 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.time.Duration;
+
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
@@ -19,7 +23,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         http
                 .csrf().disable()
                 .authorizeRequests()
-                .antMatchers("/api/users/register", "/api/users/login").permitAll()
+                .antMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                .antMatchers("/api/users/register", "/api/users/login", "/api/users/token/refresh").permitAll()
                 .anyRequest().authenticated()
                 .and()
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
@@ -27,8 +32,16 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .addFilterBefore(new JwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
     }
 
+    /**
+     * BCrypt at {@code user.password.bcrypt-strength}, run off the request threads by a
+     * {@link BoundedPasswordEncoder}.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${user.password.bcrypt-strength}") int strength,
+                                           @Value("${user.password.hash-threads}") int threads,
+                                           @Value("${user.password.queue-capacity}") int queueCapacity,
+                                           @Value("${user.password.timeout}") Duration timeout,
+                                           MeterRegistry meterRegistry) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(strength), threads, queueCapacity, timeout, meterRegistry);
     }
 }
\ No newline at end of file
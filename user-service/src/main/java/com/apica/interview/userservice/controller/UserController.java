@@ -1,12 +1,20 @@
 package com.apica.interview.userservice.controller;
 
+import com.apica.interview.userservice.model.AuthResponse;
+import com.apica.interview.userservice.model.JournalBatchResult;
+import com.apica.interview.userservice.model.JournalEntryRequest;
 import com.apica.interview.userservice.model.LoginRequest;
+import com.apica.interview.userservice.model.RefreshTokenRequest;
 import com.apica.interview.userservice.model.User;
 import com.apica.interview.userservice.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
@@ -35,14 +43,27 @@ public class UserController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<String> login(@RequestBody LoginRequest loginRequest) {
-        String token = userService.authenticateUser(loginRequest.getUsername(), loginRequest.getPassword());
-        return ResponseEntity.ok(token);
+    public ResponseEntity<AuthResponse> login(@RequestBody LoginRequest loginRequest) {
+        AuthResponse tokens = userService.authenticateUser(loginRequest.getUsername(), loginRequest.getPassword());
+        return ResponseEntity.ok(tokens);
+    }
+
+    @PostMapping("/token/refresh")
+    public ResponseEntity<AuthResponse> refreshToken(@RequestBody RefreshTokenRequest request) {
+        return ResponseEntity.ok(userService.refreshAccessToken(request.getRefreshToken()));
     }
 
-        @PostMapping("/journals/{username}")
-    public ResponseEntity<Void> addJournalEntry(@PathVariable String username, @RequestBody String entry) {
-        userService.addEntry(username, entry);
+    @PostMapping("/journals/{username}")
+    public ResponseEntity<Void> addJournalEntry(@PathVariable String username, @RequestBody JournalEntryRequest entry) {
+        userService.addEntry(username, entry.getContent());
         return ResponseEntity.ok().build();
     }
+
+    /**
+     * Accepts many entries in one request, as a JSON array or as newline-delimited JSON, read as a stream.
+     */
+    @PostMapping(value = "/journals/{username}/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public ResponseEntity<JournalBatchResult> addJournalEntries(@PathVariable String username, InputStream body) throws IOException {
+        return ResponseEntity.ok(userService.addEntries(username, body));
+    }
 }
\ No newline at end of file
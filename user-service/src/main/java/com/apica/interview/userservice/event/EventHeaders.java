@@ -0,0 +1,29 @@
+package com.apica.interview.userservice.event;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Kafka headers shared by user-service and journal-service; both services carry an identical copy of this class.
+ * Every record carries an {@link #TYPE} header so consumers can route or skip it without decoding the payload.
+ */
+public final class EventHeaders {
+
+    public static final String TYPE = "event-type";
+
+    /**
+     * Decimal id of the user a lifecycle event is about. Unlike the record key it survives a rename.
+     */
+    public static final String USER_ID = "user-id";
+
+    public static final String USER_CREATED = "user-created";
+    public static final String USER_UPDATED = "user-updated";
+    public static final String USER_DELETED = "user-deleted";
+    public static final String JOURNAL_ENTRY_CREATED = "journal-entry-created";
+
+    private EventHeaders() {
+    }
+
+    public static byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
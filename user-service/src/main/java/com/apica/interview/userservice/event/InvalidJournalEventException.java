@@ -0,0 +1,12 @@
+package com.apica.interview.userservice.event;
+
+public class InvalidJournalEventException extends RuntimeException {
+
+    public InvalidJournalEventException(String message) {
+        super(message);
+    }
+
+    public InvalidJournalEventException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,116 @@
+package com.apica.interview.userservice.event;
+
+import com.apica.interview.userservice.model.JournalEntry;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Date;
+
+/**
+ * Wire format of the journal entry events that user-service publishes and journal-service consumes.
+ * Both services carry an identical copy of this class, so any change has to be made in both.
+ *
+ * <pre>{"v":1,"username":"alice","content":"Dear diary, ...","createdAt":1728396779000}</pre>
+ *
+ * {@code createdAt} is epoch millis. Unknown fields are skipped on decode, so optional fields can be added
+ * without a new {@link #VERSION}; changing the meaning of an existing field requires one.
+ */
+public class JournalEventCodec {
+
+    public static final int VERSION = 1;
+
+    private static final String FIELD_VERSION = "v";
+    private static final String FIELD_USERNAME = "username";
+    private static final String FIELD_CONTENT = "content";
+    private static final String FIELD_CREATED_AT = "createdAt";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public String encode(JournalEntry entry) {
+        String content = entry.getContent();
+        StringWriter writer = new StringWriter(64 + (content != null ? content.length() : 0));
+        try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeNumberField(FIELD_VERSION, VERSION);
+            generator.writeStringField(FIELD_USERNAME, entry.getUsername());
+            generator.writeStringField(FIELD_CONTENT, content);
+            generator.writeNumberField(FIELD_CREATED_AT, entry.getCreatedAt().getTime());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not encode journal event", e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Decodes an event in a single pass over the token stream, without building an intermediate tree.
+     *
+     * @throws InvalidJournalEventException if the event is not well-formed JSON, has an unsupported version
+     *                                      or lacks one of the required fields
+     */
+    public JournalEntry decode(String event) {
+        int version = -1;
+        String username = null;
+        String content = null;
+        Long createdAt = null;
+
+        try (JsonParser parser = jsonFactory.createParser(event)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new InvalidJournalEventException("Journal event is not a JSON object");
+            }
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case FIELD_VERSION:
+                        expect(token, JsonToken.VALUE_NUMBER_INT, field);
+                        version = parser.getIntValue();
+                        break;
+                    case FIELD_USERNAME:
+                        expect(token, JsonToken.VALUE_STRING, field);
+                        username = parser.getText();
+                        break;
+                    case FIELD_CONTENT:
+                        expect(token, JsonToken.VALUE_STRING, field);
+                        content = parser.getText();
+                        break;
+                    case FIELD_CREATED_AT:
+                        expect(token, JsonToken.VALUE_NUMBER_INT, field);
+                        createdAt = parser.getLongValue();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (parser.getCurrentToken() != JsonToken.END_OBJECT) {
+                throw new InvalidJournalEventException("Journal event is not a JSON object");
+            }
+        } catch (IOException e) {
+            throw new InvalidJournalEventException("Malformed journal event", e);
+        }
+
+        if (version != VERSION) {
+            throw new InvalidJournalEventException("Unsupported journal event version: " + version);
+        }
+        if (username == null || content == null || createdAt == null) {
+            throw new InvalidJournalEventException("Journal event is missing a required field");
+        }
+
+        JournalEntry entry = new JournalEntry();
+        entry.setUsername(username);
+        entry.setContent(content);
+        entry.setCreatedAt(new Date(createdAt));
+        return entry;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected, String field) {
+        if (actual != expected) {
+            throw new InvalidJournalEventException("Unexpected " + actual + " for field '" + field + "'");
+        }
+    }
+}
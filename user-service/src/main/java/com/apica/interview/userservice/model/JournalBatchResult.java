@@ -0,0 +1,78 @@
+package com.apica.interview.userservice.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JournalBatchResult {
+    public static final String ACCEPTED = "accepted";
+    public static final String REJECTED = "rejected";
+
+    private final List<EntryResult> results = new ArrayList<>();
+    private int accepted;
+    private int rejected;
+    private String error;
+
+    public void accept(int index) {
+        results.add(new EntryResult(index, ACCEPTED, null));
+        accepted++;
+    }
+
+    public void reject(int index, String reason) {
+        results.add(new EntryResult(index, REJECTED, reason));
+        rejected++;
+    }
+
+    public List<EntryResult> getResults() {
+        return results;
+    }
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Why reading the body stopped early, if it did; entries after that point were not read and have no result.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class EntryResult {
+        private final int index;
+        private final String status;
+        private final String error;
+
+        public EntryResult(int index, String status, String error) {
+            this.index = index;
+            this.status = status;
+            this.error = error;
+        }
+
+        /**
+         * Zero-based position of the entry in the request body.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
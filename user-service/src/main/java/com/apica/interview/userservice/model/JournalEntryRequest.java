@@ -0,0 +1,28 @@
+package com.apica.interview.userservice.model;
+
+import java.util.Date;
+
+public class JournalEntryRequest {
+    private String content;
+    private Date createdAt;
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    /**
+     * When the entry was written on the client, for entries synced later through the batch endpoint; the time the
+     * server receives it if absent.
+     */
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,106 @@
+package com.apica.interview.userservice.model;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * A Kafka record waiting to be published. Written in the same transaction as the change it announces and
+ * removed by the outbox publisher once the broker has acknowledged it.
+ */
+@Entity
+@Table(name = "outbox_events")
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_events_seq")
+    @SequenceGenerator(name = "outbox_events_seq", sequenceName = "outbox_events_seq", allocationSize = 100)
+    private Long id;
+    private String topic;
+    private String eventType;
+    private String eventKey;
+    private Long userId;
+    @Lob
+    private String payload;
+    private Date createdAt;
+
+    public OutboxEvent() {
+    }
+
+    public OutboxEvent(String topic, String eventType, String eventKey, String payload) {
+        this.topic = topic;
+        this.eventType = eventType;
+        this.eventKey = eventKey;
+        this.payload = payload;
+        this.createdAt = new Date();
+    }
+
+    public OutboxEvent(String topic, String eventType, String eventKey, Long userId, String payload) {
+        this(topic, eventType, eventKey, payload);
+        this.userId = userId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * Value of the {@code event-type} header, one of the constants in
+     * {@link com.apica.interview.userservice.event.EventHeaders}.
+     */
+    public String getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    /**
+     * Kafka record key. Events are keyed by username so each user's events land on one partition, in order.
+     */
+    public String getEventKey() {
+        return eventKey;
+    }
+
+    public void setEventKey(String eventKey) {
+        this.eventKey = eventKey;
+    }
+
+    /**
+     * Value of the {@code user-id} header on user lifecycle events; {@code null} for journal entries.
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+}
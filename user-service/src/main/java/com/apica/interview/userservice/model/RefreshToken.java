@@ -0,0 +1,65 @@
+package com.apica.interview.userservice.model;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * A long-lived refresh token, stored only as the SHA-256 of its value. The token is 256 random bits, so a
+ * plain hash is enough and the lookup stays a single indexed read, with no BCrypt on the way.
+ */
+@Entity
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "idx_refresh_tokens_hash", columnList = "token_hash", unique = true),
+        @Index(name = "idx_refresh_tokens_user", columnList = "user_id")
+})
+public class RefreshToken {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "token_hash", nullable = false, length = 64)
+    private String tokenHash;
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    private Date expiresAt;
+
+    public RefreshToken() {
+    }
+
+    public RefreshToken(String tokenHash, Long userId, Date expiresAt) {
+        this.tokenHash = tokenHash;
+        this.userId = userId;
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(String tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,11 @@
+package com.apica.interview.userservice.repository;
+
+import com.apica.interview.userservice.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    List<OutboxEvent> findAllByOrderByIdAsc(Pageable pageable);
+}
@@ -0,0 +1,29 @@
+package com.apica.interview.userservice.repository;
+
+import com.apica.interview.userservice.model.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.Optional;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    /**
+     * @return 1 if this call revoked the token, 0 if a concurrent refresh already had
+     */
+    @Modifying
+    @Query("delete from RefreshToken t where t.id = :id")
+    int revoke(@Param("id") Long id);
+
+    @Modifying
+    @Query("delete from RefreshToken t where t.userId = :userId")
+    int revokeAllForUser(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("delete from RefreshToken t where t.expiresAt < :now")
+    int deleteExpired(@Param("now") Date now);
+}
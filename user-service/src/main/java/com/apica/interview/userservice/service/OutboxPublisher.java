@@ -0,0 +1,129 @@
+package com.apica.interview.userservice.service;
+
+import com.apica.interview.userservice.event.EventHeaders;
+import com.apica.interview.userservice.model.OutboxEvent;
+import com.apica.interview.userservice.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains {@code outbox_events} to Kafka off the request path. Each round hands up to {@code user.outbox.batch-size}
+ * records to the producer at once, so they leave in as few compressed batches as {@code linger.ms} and
+ * {@code batch.size} allow, then deletes the ones the broker acknowledged. Records whose send failed stay in the
+ * outbox and are retried on the next round, and so do the later records with the same key even if they were
+ * acknowledged: deleting those would let a key's events reach consumers out of order. The producer is idempotent,
+ * so its own retries neither duplicate nor reorder records.
+ * <p>
+ * Exposes {@code outbox.sends.in-flight}, {@code outbox.sends.failed} and {@code outbox.send.latency}, the time from
+ * handing a record to the producer until the broker acknowledges it.
+ */
+@Component
+public class OutboxPublisher {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final int batchSize;
+    private final Duration sendTimeout;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter failedSends;
+    private final Timer sendLatency;
+
+    public OutboxPublisher(OutboxEventRepository outboxEventRepository,
+                           KafkaTemplate<String, String> kafkaTemplate,
+                           @Value("${user.outbox.batch-size}") int batchSize,
+                           @Value("${user.outbox.send-timeout}") Duration sendTimeout,
+                           MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.batchSize = batchSize;
+        this.sendTimeout = sendTimeout;
+        Gauge.builder("outbox.sends.in-flight", inFlight, AtomicInteger::get)
+                .description("Outbox records handed to the producer and not yet acknowledged")
+                .register(meterRegistry);
+        this.failedSends = Counter.builder("outbox.sends.failed")
+                .description("Outbox records the producer failed to deliver")
+                .register(meterRegistry);
+        this.sendLatency = Timer.builder("outbox.send.latency")
+                .description("Time from handing an outbox record to the producer until the broker acknowledged it")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${user.outbox.poll-interval}")
+    public void publishPending() {
+        List<OutboxEvent> batch;
+        do {
+            batch = outboxEventRepository.findAllByOrderByIdAsc(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+        } while (publish(batch) && batch.size() == batchSize);
+    }
+
+    /**
+     * @return whether every record in the batch was acknowledged
+     */
+    boolean publish(List<OutboxEvent> batch) {
+        List<ListenableFuture<SendResult<String, String>>> futures = new ArrayList<>(batch.size());
+        for (OutboxEvent event : batch) {
+            inFlight.incrementAndGet();
+            ProducerRecord<String, String> record = new ProducerRecord<>(event.getTopic(), event.getEventKey(), event.getPayload());
+            record.headers().add(EventHeaders.TYPE, EventHeaders.encode(event.getEventType()));
+            if (event.getUserId() != null) {
+                record.headers().add(EventHeaders.USER_ID, EventHeaders.encode(event.getUserId().toString()));
+            }
+            long sentAt = System.nanoTime();
+            ListenableFuture<SendResult<String, String>> future = kafkaTemplate.send(record);
+            future.addCallback(result -> {
+                inFlight.decrementAndGet();
+                sendLatency.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS);
+            }, failure -> {
+                inFlight.decrementAndGet();
+                failedSends.increment();
+            });
+            futures.add(future);
+        }
+
+        long deadline = System.nanoTime() + sendTimeout.toNanos();
+        List<Long> sent = new ArrayList<>(batch.size());
+        Set<String> failedKeys = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxEvent event = batch.get(i);
+            try {
+                futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (!failedKeys.contains(event.getEventKey())) {
+                    sent.add(event.getId());
+                }
+            } catch (ExecutionException | TimeoutException e) {
+                // Left in the outbox with everything after it for the key; the next round sends them again.
+                failedKeys.add(event.getEventKey());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!sent.isEmpty()) {
+            outboxEventRepository.deleteAllByIdInBatch(sent);
+        }
+        return sent.size() == batch.size();
+    }
+}
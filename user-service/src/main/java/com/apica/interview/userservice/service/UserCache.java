@@ -0,0 +1,152 @@
+package com.apica.interview.userservice.service;
+
+import com.apica.interview.userservice.event.EventHeaders;
+import com.apica.interview.userservice.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of users by id, with a secondary username-to-id index, both evicted by size and after
+ * {@code user.cache.ttl}. Callers always get a fresh detached {@link User}, never the cached value itself.
+ * <p>
+ * {@link UserService} invalidates on every write, once straight away and again after commit so a concurrent read
+ * cannot put back the row it is replacing. Other replicas hear about the change through {@code user-events},
+ * consumed here on a consumer group of this instance's own. Anything missed, for example while the broker is
+ * unreachable, is still gone after the TTL.
+ * <p>
+ * Values are {@link CachedUser}s, whose {@code toString} leaves the password hash out. The only metrics are
+ * hit/miss/eviction counts, published as {@code cache.*{cache="users"}}.
+ */
+@Component
+public class UserCache {
+
+    private final Cache<Long, CachedUser> usersById;
+    private final Cache<String, Long> idsByUsername;
+
+    public UserCache(@Value("${user.cache.max-size}") long maxSize,
+                     @Value("${user.cache.ttl}") Duration ttl,
+                     MeterRegistry meterRegistry) {
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.idsByUsername = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, usersById, "users");
+    }
+
+    public Optional<User> getById(Long id, Function<Long, Optional<User>> loader) {
+        CachedUser cached = usersById.get(id, key -> loader.apply(key).map(CachedUser::new).orElse(null));
+        if (cached == null) {
+            return Optional.empty();
+        }
+        idsByUsername.put(cached.username, cached.id);
+        return Optional.of(cached.toUser());
+    }
+
+    public Optional<User> getByUsername(String username, Function<String, Optional<User>> loader) {
+        Long id = idsByUsername.getIfPresent(username);
+        if (id != null) {
+            CachedUser cached = usersById.getIfPresent(id);
+            // A rename leaves the old name pointing at the id until it expires or is invalidated.
+            if (cached != null && cached.username.equals(username)) {
+                return Optional.of(cached.toUser());
+            }
+        }
+        Optional<User> loaded = loader.apply(username);
+        loaded.ifPresent(user -> {
+            usersById.put(user.getId(), new CachedUser(user));
+            idsByUsername.put(user.getUsername(), user.getId());
+        });
+        return loaded;
+    }
+
+    /**
+     * Forgets the user now and, inside a transaction, once more after it commits.
+     */
+    public void invalidate(Long id, String... usernames) {
+        evict(id, usernames);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(id, usernames);
+                }
+            });
+        }
+    }
+
+    @KafkaListener(topics = UserService.USER_EVENTS_TOPIC, groupId = "user-cache-#{T(java.util.UUID).randomUUID()}",
+            properties = "auto.offset.reset=latest")
+    public void onUserEvent(ConsumerRecord<String, String> record) {
+        Header userId = record.headers().lastHeader(EventHeaders.USER_ID);
+        evict(userId != null ? Long.valueOf(new String(userId.value(), StandardCharsets.UTF_8)) : null, record.key());
+    }
+
+    private void evict(Long id, String... usernames) {
+        if (id != null) {
+            CachedUser cached = usersById.getIfPresent(id);
+            usersById.invalidate(id);
+            if (cached != null) {
+                idsByUsername.invalidate(cached.username);
+            }
+        }
+        for (String username : usernames) {
+            if (username != null) {
+                idsByUsername.invalidate(username);
+            }
+        }
+    }
+
+    /**
+     * Immutable copy of a {@link User} row, detached from any persistence context.
+     */
+    static final class CachedUser {
+        private final Long id;
+        private final String username;
+        private final String passwordHash;
+        private final String email;
+        private final String role;
+
+        CachedUser(User user) {
+            this.id = user.getId();
+            this.username = user.getUsername();
+            this.passwordHash = user.getPassword();
+            this.email = user.getEmail();
+            this.role = user.getRole();
+        }
+
+        User toUser() {
+            User user = new User();
+            user.setId(id);
+            user.setUsername(username);
+            user.setPassword(passwordHash);
+            user.setEmail(email);
+            user.setRole(role);
+            return user;
+        }
+
+        @Override
+        public String toString() {
+            return "CachedUser{id=" + id + ", username='" + username + "', email='" + email + "', role='" + role
+                    + "', passwordHash=[REDACTED]}";
+        }
+    }
+}
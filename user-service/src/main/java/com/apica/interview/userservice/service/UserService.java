@@ -1,20 +1,51 @@
 package com.apica.interview.userservice.service;
 
+import com.apica.interview.userservice.event.EventHeaders;
+import com.apica.interview.userservice.event.JournalEventCodec;
+import com.apica.interview.userservice.model.AuthResponse;
+import com.apica.interview.userservice.model.JournalBatchResult;
 import com.apica.interview.userservice.model.JournalEntry;
+import com.apica.interview.userservice.model.JournalEntryRequest;
+import com.apica.interview.userservice.model.OutboxEvent;
+import com.apica.interview.userservice.model.RefreshToken;
 import com.apica.interview.userservice.model.User;
+import com.apica.interview.userservice.repository.OutboxEventRepository;
+import com.apica.interview.userservice.repository.RefreshTokenRepository;
 import com.apica.interview.userservice.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
 
 @Service
 public class UserService {
+    static final String USER_EVENTS_TOPIC = "user-events";
+    static final String JOURNAL_EVENTS_TOPIC = "journal-events";
+    private static final long ACCESS_TOKEN_TTL_MILLIS = 1000 * 60 * 60; //Last an hour
+
     @Autowired
     private UserRepository userRepository;
 
@@ -22,62 +53,241 @@ public class UserService {
     private PasswordEncoder passwordEncoder;
 
     @Autowired
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${user.outbox.batch-size}")
+    private int batchChunkSize;
+
+    @Value("${user.journal.batch.max-entries}")
+    private int maxBatchEntries;
 
+    @Value("${user.auth.refresh-token-ttl}")
+    private Duration refreshTokenTtl;
+
+    private final JournalEventCodec eventCodec = new JournalEventCodec();
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Transactional
     public User createUser(User user) {
         user.setPassword(passwordEncoder.encode(user.getPassword()));
         User savedUser = userRepository.save(user);
-        kafkaTemplate.send("user-events", "User created: " + savedUser.getUsername());
+        publishUserEvent(EventHeaders.USER_CREATED, savedUser, "User created: " + savedUser.getUsername());
         return savedUser;
     }
 
     public User getUserById(Long id) {
+        return userCache.getById(id, userRepository::findById).orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    /**
+     * Writes read the row itself rather than the cache, so they never save back a stale copy.
+     */
+    private User loadUserForUpdate(Long id) {
         return userRepository.findById(id).orElseThrow(() -> new RuntimeException("User not found"));
     }
 
+    @Transactional
     public User updateUser(Long id, User user) {
-        User existingUser = getUserById(id);
+        User existingUser = loadUserForUpdate(id);
+        String previousUsername = existingUser.getUsername();
         existingUser.setUsername(user.getUsername());
         existingUser.setEmail(user.getEmail());
         existingUser.setRole(user.getRole());
         User updatedUser = userRepository.save(existingUser);
-        kafkaTemplate.send("user-events", "User updated: " + updatedUser.getUsername());
+        userCache.invalidate(id, previousUsername, updatedUser.getUsername());
+        publishUserEvent(EventHeaders.USER_UPDATED, updatedUser, "User updated: " + updatedUser.getUsername());
         return updatedUser;
     }
 
+    @Transactional
     public JournalEntry addEntry(String username, String content) {
+        JournalEntry entry = newEntry(username, content, null);
+        publish(JOURNAL_EVENTS_TOPIC, EventHeaders.JOURNAL_ENTRY_CREATED, username, eventCodec.encode(entry));
+
+        return entry;
+    }
+
+    /**
+     * Reads journal entries one at a time from a JSON array or newline-delimited JSON body and queues them in the
+     * outbox in chunks of {@code user.outbox.batch-size}, one transaction and one JDBC batch per chunk, so neither
+     * the body nor the whole set of entries is ever held in memory. Entries without content are rejected
+     * individually, as are entries with a field of the wrong type. If the body turns out to be malformed or has more than {@code user.journal.batch.max-entries}
+     * entries, reading stops there; everything accepted before that point is kept and reported.
+     */
+    public JournalBatchResult addEntries(String username, InputStream body) throws IOException {
+        JournalBatchResult result = new JournalBatchResult();
+        List<OutboxEvent> chunk = new ArrayList<>(batchChunkSize);
+        int index = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                if (index == maxBatchEntries) {
+                    result.setError("More than " + maxBatchEntries + " entries; the rest were not read");
+                    break;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    result.reject(index++, "Entry is not a JSON object");
+                } else {
+                    // Bound from a tree, so a value of the wrong type (an unparseable createdAt, say) rejects this
+                    // entry alone; only a syntax error in the body itself stops the reading.
+                    JsonNode tree = parser.readValueAsTree();
+                    JournalEntryRequest request = null;
+                    String rejection = null;
+                    try {
+                        request = objectMapper.treeToValue(tree, JournalEntryRequest.class);
+                    } catch (JsonProcessingException e) {
+                        rejection = e.getOriginalMessage();
+                    }
+                    if (request != null && (request.getContent() == null || request.getContent().isEmpty())) {
+                        rejection = "content is required";
+                    }
+                    if (rejection != null) {
+                        result.reject(index++, rejection);
+                    } else {
+                        JournalEntry entry = newEntry(username, request.getContent(), request.getCreatedAt());
+                        chunk.add(new OutboxEvent(JOURNAL_EVENTS_TOPIC, EventHeaders.JOURNAL_ENTRY_CREATED, username,
+                                eventCodec.encode(entry)));
+                        result.accept(index++);
+                        if (chunk.size() == batchChunkSize) {
+                            outboxEventRepository.saveAll(chunk);
+                            chunk = new ArrayList<>(batchChunkSize);
+                        }
+                    }
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            result.setError("Malformed JSON after entry " + index + ": " + e.getOriginalMessage());
+        }
+        if (!chunk.isEmpty()) {
+            outboxEventRepository.saveAll(chunk);
+        }
+        return result;
+    }
+
+    private static JournalEntry newEntry(String username, String content, Date createdAt) {
         JournalEntry entry = new JournalEntry();
         entry.setUsername(username);
         entry.setContent(content);
-        entry.setCreatedAt(new Date());
-        kafkaTemplate.send("user-events", entry.toString());
-
+        entry.setCreatedAt(createdAt != null ? createdAt : new Date());
         return entry;
     }
 
+    @Transactional
     public void deleteUser(Long id) {
-        User user = getUserById(id);
+        User user = loadUserForUpdate(id);
         userRepository.delete(user);
-        kafkaTemplate.send("user-events", "User deleted: " + user.getUsername());
+        refreshTokenRepository.revokeAllForUser(user.getId());
+        userCache.invalidate(id, user.getUsername());
+        publishUserEvent(EventHeaders.USER_DELETED, user, "User deleted: " + user.getUsername());
+    }
+
+    /**
+     * Queues the event in the outbox as part of the caller's transaction; {@link OutboxPublisher} sends it.
+     * Keying by username keeps every event of a user on the same partition, so consumers see them in order.
+     * User lifecycle events go to {@code user-events} and journal entries to {@code journal-events}, each tagged
+     * with an {@code event-type} header.
+     */
+    private void publish(String topic, String eventType, String username, String payload) {
+        outboxEventRepository.save(new OutboxEvent(topic, eventType, username, payload));
+    }
+
+    /**
+     * Lifecycle events also carry a {@code user-id} header, which {@link UserCache} on every replica uses to
+     * invalidate the user even after a rename.
+     */
+    private void publishUserEvent(String eventType, User user, String payload) {
+        outboxEventRepository.save(new OutboxEvent(USER_EVENTS_TOPIC, eventType, user.getUsername(), user.getId(), payload));
     }
 
-    public String authenticateUser(String username, String password) {
-        User user = userRepository.findByUsername(username)
+    /**
+     * Checks the password with BCrypt and issues an access token together with a refresh token, which
+     * {@link #refreshAccessToken} can later exchange for a new access token without paying for BCrypt again.
+     * Deliberately not transactional, so no connection is held while the password is hashed.
+     */
+    public AuthResponse authenticateUser(String username, String password) {
+        User user = userCache.getByUsername(username, userRepository::findByUsername)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         if (passwordEncoder.matches(password, user.getPassword())) {
-            return generateToken(user);
+            countLogin("password", "success");
+            return issueTokens(user);
         } else {
+            countLogin("password", "failure");
             throw new RuntimeException("Invalid password");
         }
     }
 
+    /**
+     * Exchanges a refresh token for a new access token and a new refresh token. The presented token is revoked
+     * in the same transaction, so each one can be used once; of two concurrent requests with the same token
+     * only one succeeds.
+     */
+    @Transactional
+    public AuthResponse refreshAccessToken(String refreshToken) {
+        RefreshToken stored = refreshToken == null ? null
+                : refreshTokenRepository.findByTokenHash(hashRefreshToken(refreshToken)).orElse(null);
+        if (stored == null || stored.getExpiresAt().before(new Date())
+                || refreshTokenRepository.revoke(stored.getId()) == 0) {
+            countLogin("refresh", "failure");
+            throw new RuntimeException("Invalid refresh token");
+        }
+        User user = getUserById(stored.getUserId());
+        countLogin("refresh", "success");
+        return issueTokens(user);
+    }
+
+    @Scheduled(fixedDelayString = "${user.auth.refresh-token-purge-interval}")
+    @Transactional
+    public void purgeExpiredRefreshTokens() {
+        refreshTokenRepository.deleteExpired(new Date());
+    }
+
+    private AuthResponse issueTokens(User user) {
+        byte[] random = new byte[32];
+        secureRandom.nextBytes(random);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+        Date expiresAt = new Date(System.currentTimeMillis() + refreshTokenTtl.toMillis());
+        refreshTokenRepository.save(new RefreshToken(hashRefreshToken(refreshToken), user.getId(), expiresAt));
+        return new AuthResponse(generateToken(user), refreshToken, ACCESS_TOKEN_TTL_MILLIS / 1000);
+    }
+
+    private void countLogin(String method, String outcome) {
+        meterRegistry.counter("auth.logins", "method", method, "outcome", outcome).increment();
+    }
+
+    static String hashRefreshToken(String refreshToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(refreshToken.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
     private String generateToken(User user) {
-        long expirationTime = 1000 * 60 * 60; //Last an hour
         return Jwts.builder()
                 .setSubject(user.getUsername())
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + expirationTime))
+                .setExpiration(new Date(System.currentTimeMillis() + ACCESS_TOKEN_TTL_MILLIS))
                 .signWith(Keys.hmacShaKeyFor("sBv2rCk9YPpK+Kuj5MJKgXbBFO/5bdRUpEHmgXkGR4Q=".getBytes()))
                 .compact(); //Randomly generated a token from an external program, used the same in the journal service as well.
     }
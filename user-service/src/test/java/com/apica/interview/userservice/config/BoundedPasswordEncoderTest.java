@@ -0,0 +1,114 @@
+package com.apica.interview.userservice.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BoundedPasswordEncoderTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private PasswordEncoder delegate;
+
+    private MeterRegistry meterRegistry;
+
+    private BoundedPasswordEncoder encoder;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(PasswordEncoder.class);
+        meterRegistry = new SimpleMeterRegistry();
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1, Duration.ofSeconds(5), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        encoder.destroy();
+    }
+
+    @Test
+    void matches_ShouldRunOnHashPoolAndRecordLatency() {
+        when(delegate.matches("password", "hash")).thenReturn(true);
+
+        assertTrue(encoder.matches("password", "hash"));
+
+        assertEquals(1, meterRegistry.timer("password.hash.duration", "operation", "matches").count());
+    }
+
+    @Test
+    void encode_ShouldRejectWith503WhenQueueIsFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        when(delegate.encode(anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return "hash";
+        });
+        startInBackground();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        startInBackground();
+        while (meterRegistry.get("password.hash.queue.depth").gauge().value() < 1) {
+            Thread.sleep(5);
+        }
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> encoder.encode("third"));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatus());
+        assertEquals(1.0, meterRegistry.counter("password.hash.rejected", "reason", "queue-full").count());
+    }
+
+    @Test
+    void encode_ShouldFailWith503WhenHashTakesTooLong() {
+        encoder.destroy();
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1, Duration.ofMillis(50), meterRegistry);
+        when(delegate.encode(anyString())).thenAnswer(invocation -> {
+            release.await();
+            return "hash";
+        });
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> encoder.encode("slow"));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatus());
+        assertEquals(1.0, meterRegistry.counter("password.hash.rejected", "reason", "timeout").count());
+    }
+
+    @Test
+    void encode_ShouldDropQueuedHashWhoseCallerTimedOut() throws InterruptedException {
+        encoder.destroy();
+        meterRegistry = new SimpleMeterRegistry();
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1, Duration.ofMillis(200), meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        when(delegate.encode(anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return "hash";
+        });
+        startInBackground();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertThrows(ResponseStatusException.class, () -> encoder.encode("queued"));
+        assertEquals(0.0, meterRegistry.get("password.hash.queue.depth").gauge().value());
+
+        release.countDown();
+        assertEquals("hash", encoder.encode("after"));
+        verify(delegate, never()).encode("queued");
+    }
+
+    private void startInBackground() {
+        Thread thread = new Thread(() -> encoder.encode("password"));
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,109 @@
+package com.apica.interview.userservice.service;
+
+import com.apica.interview.userservice.model.OutboxEvent;
+import com.apica.interview.userservice.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class OutboxPublisherTest {
+
+    private OutboxEventRepository outboxEventRepository;
+
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    private MeterRegistry meterRegistry;
+
+    private OutboxPublisher publisher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        outboxEventRepository = mock(OutboxEventRepository.class);
+        kafkaTemplate = mock(KafkaTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        publisher = new OutboxPublisher(outboxEventRepository, kafkaTemplate, 2, Duration.ofSeconds(1), meterRegistry);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publishPending_ShouldDrainFullBatchesAndDeleteAcknowledgedEvents() {
+        when(outboxEventRepository.findAllByOrderByIdAsc(any(Pageable.class)))
+                .thenReturn(Arrays.asList(event(1L, "a"), event(2L, "b")))
+                .thenReturn(Collections.singletonList(event(3L, "c")));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> acknowledged());
+
+        publisher.publishPending();
+
+        ArgumentCaptor<ProducerRecord<String, String>> recordCaptor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate, times(3)).send(recordCaptor.capture());
+        ProducerRecord<String, String> first = recordCaptor.getAllValues().get(0);
+        assertEquals("user-events", first.topic());
+        assertEquals("user1", first.key());
+        assertEquals("a", first.value());
+        assertArrayEquals("user-created".getBytes(StandardCharsets.UTF_8), first.headers().lastHeader("event-type").value());
+        assertEquals("c", recordCaptor.getAllValues().get(2).value());
+        verify(outboxEventRepository).deleteAllByIdInBatch(Arrays.asList(1L, 2L));
+        verify(outboxEventRepository).deleteAllByIdInBatch(Collections.singletonList(3L));
+        assertEquals(0.0, meterRegistry.get("outbox.sends.in-flight").gauge().value());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publish_ShouldKeepFailedEventsForTheNextRound() {
+        SettableListenableFuture<SendResult<String, String>> failed = new SettableListenableFuture<>();
+        failed.setException(new IllegalStateException("broker unavailable"));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(acknowledged(), failed);
+
+        boolean complete = publisher.publish(Arrays.asList(event(1L, "a"), event(2L, "b")));
+
+        assertFalse(complete);
+        verify(outboxEventRepository).deleteAllByIdInBatch(Collections.singletonList(1L));
+        assertEquals(1.0, meterRegistry.get("outbox.sends.failed").counter().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publish_ShouldKeepLaterEventsOfAKeyWhoseEarlierEventFailed() {
+        SettableListenableFuture<SendResult<String, String>> failed = new SettableListenableFuture<>();
+        failed.setException(new IllegalStateException("broker unavailable"));
+        OutboxEvent otherUser = new OutboxEvent("user-events", "user-created", "user2", "c");
+        otherUser.setId(3L);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(failed, acknowledged(), acknowledged());
+
+        boolean complete = publisher.publish(Arrays.asList(event(1L, "a"), event(2L, "b"), otherUser));
+
+        assertFalse(complete);
+        verify(outboxEventRepository).deleteAllByIdInBatch(Collections.singletonList(3L));
+    }
+
+    private static SettableListenableFuture<SendResult<String, String>> acknowledged() {
+        SettableListenableFuture<SendResult<String, String>> future = new SettableListenableFuture<>();
+        future.set(null);
+        return future;
+    }
+
+    private static OutboxEvent event(Long id, String payload) {
+        OutboxEvent event = new OutboxEvent("user-events", "user-created", "user1", payload);
+        event.setId(id);
+        return event;
+    }
+}
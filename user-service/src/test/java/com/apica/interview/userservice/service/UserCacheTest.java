@@ -0,0 +1,73 @@
+package com.apica.interview.userservice.service;
+
+import com.apica.interview.userservice.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCacheTest {
+
+    private final UserCache userCache = new UserCache(100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+
+    @Test
+    void getByUsername_ShouldNotServeUserUnderNameItNoLongerHas() {
+        AtomicInteger loads = new AtomicInteger();
+        userCache.getByUsername("old", name -> {
+            loads.incrementAndGet();
+            return Optional.of(user(1L, "old"));
+        });
+        // Another replica renamed the user; this one only hears about the id.
+        userCache.invalidate(1L);
+        userCache.getById(1L, id -> Optional.of(user(1L, "new")));
+
+        Optional<User> byOldName = userCache.getByUsername("old", name -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        });
+
+        assertFalse(byOldName.isPresent());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void onUserEvent_ShouldInvalidateByUserIdHeader() {
+        AtomicInteger loads = new AtomicInteger();
+        userCache.getById(1L, id -> {
+            loads.incrementAndGet();
+            return Optional.of(user(1L, "admin"));
+        });
+        ConsumerRecord<String, String> event = new ConsumerRecord<>("user-events", 0, 0L, "renamed", "User updated: renamed");
+        event.headers().add("user-id", "1".getBytes(StandardCharsets.UTF_8));
+
+        userCache.onUserEvent(event);
+        userCache.getById(1L, id -> {
+            loads.incrementAndGet();
+            return Optional.of(user(1L, "renamed"));
+        });
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void cachedUser_ShouldNotExposePasswordHashInToString() {
+        User user = user(1L, "admin");
+        user.setPassword("$2a$10$secrethash");
+
+        assertFalse(new UserCache.CachedUser(user).toString().contains("secrethash"));
+    }
+
+    private static User user(Long id, String username) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setPassword("hash");
+        return user;
+    }
+}
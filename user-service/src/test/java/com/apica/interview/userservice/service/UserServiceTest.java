@@ -1,19 +1,40 @@
 package com.apica.interview.userservice.service;
 
+import com.apica.interview.userservice.event.JournalEventCodec;
+import com.apica.interview.userservice.model.AuthResponse;
+import com.apica.interview.userservice.model.JournalBatchResult;
+import com.apica.interview.userservice.model.JournalEntry;
+import com.apica.interview.userservice.model.OutboxEvent;
+import com.apica.interview.userservice.model.RefreshToken;
 import com.apica.interview.userservice.model.User;
+import com.apica.interview.userservice.repository.OutboxEventRepository;
+import com.apica.interview.userservice.repository.RefreshTokenRepository;
 import com.apica.interview.userservice.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.mockito.Spy;
 import org.springframework.security.crypto.password.PasswordEncoder;
-
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class UserServiceTest {
@@ -25,7 +46,19 @@ class UserServiceTest {
     private PasswordEncoder passwordEncoder;
 
     @Mock
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private UserCache userCache = new UserCache(1000, Duration.ofMinutes(5), new SimpleMeterRegistry());
 
     @InjectMocks
     private UserService userService;
@@ -35,6 +68,9 @@ class UserServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(userService, "refreshTokenTtl", Duration.ofDays(30));
+        ReflectionTestUtils.setField(userService, "batchChunkSize", 2);
+        ReflectionTestUtils.setField(userService, "maxBatchEntries", 100);
         user = new User();
         user.setId(1L);
         user.setUsername("admin");
@@ -55,7 +91,7 @@ class UserServiceTest {
         assertEquals("admin", createdUser.getUsername());
         assertEquals("encodedPassword", createdUser.getPassword());
         verify(userRepository, times(1)).save(user);
-        verify(kafkaTemplate, times(1)).send("user-events", "User created: admin");
+        verifyPublished("user-events", "user-created", "admin", "User created: admin");
     }
 
     @Test
@@ -69,6 +105,26 @@ class UserServiceTest {
         verify(userRepository, times(1)).findById(1L);
     }
 
+    @Test
+    void getUserById_ShouldServeRepeatedLookupsFromCacheUntilUpdated() {
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        userService.getUserById(1L);
+        userService.getUserById(1L).setEmail("changed-by-caller@example.com");
+        assertEquals("admin@example.com", userService.getUserById(1L).getEmail());
+        verify(userRepository, times(1)).findById(1L);
+
+        User update = new User();
+        update.setUsername("admin");
+        update.setEmail("new@example.com");
+        userService.updateUser(1L, update);
+        userService.getUserById(1L);
+
+        verify(userRepository, times(3)).findById(1L);
+        verify(userCache).invalidate(1L, "admin", "admin");
+    }
+
     @Test
     void getUserById_ShouldThrowExceptionWhenUserNotFound() {
         when(userRepository.findById(1L)).thenReturn(Optional.empty());
@@ -97,7 +153,7 @@ class UserServiceTest {
         assertEquals("adminUpdated", result.getUsername());
         verify(userRepository, times(1)).findById(1L);
         verify(userRepository, times(1)).save(any(User.class));
-        verify(kafkaTemplate, times(1)).send("user-events", "User updated: adminUpdated");
+        verifyPublished("user-events", "user-updated", "adminUpdated", "User updated: adminUpdated");
     }
 
     @Test
@@ -109,7 +165,8 @@ class UserServiceTest {
 
         verify(userRepository, times(1)).findById(1L);
         verify(userRepository, times(1)).delete(user);
-        verify(kafkaTemplate, times(1)).send("user-events", "User deleted: admin");
+        verify(refreshTokenRepository, times(1)).revokeAllForUser(1L);
+        verifyPublished("user-events", "user-deleted", "admin", "User deleted: admin");
     }
 
     @Test
@@ -123,16 +180,124 @@ class UserServiceTest {
         assertEquals("User not found", exception.getMessage());
     }
 
+    @Test
+    void addEntry_ShouldPublishEncodedEvent() {
+        JournalEntry entry = userService.addEntry("admin", "Dear diary, {today} was \"fine\"");
+
+        OutboxEvent event = capturePublished();
+        assertEquals("journal-events", event.getTopic());
+        assertEquals("journal-entry-created", event.getEventType());
+        assertEquals("admin", event.getEventKey());
+        JournalEntry published = new JournalEventCodec().decode(event.getPayload());
+        assertEquals("admin", published.getUsername());
+        assertEquals("Dear diary, {today} was \"fine\"", published.getContent());
+        assertEquals(entry.getCreatedAt(), published.getCreatedAt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void addEntries_ShouldQueueJsonArrayInChunksAndReportEachEntry() throws IOException {
+        String body = "[{\"content\":\"one\",\"createdAt\":1728396779000},{\"content\":\"\"},"
+                + "{\"content\":\"two\"},42,{\"content\":\"three\"}]";
+
+        JournalBatchResult result = userService.addEntries("admin", stream(body));
+
+        assertEquals(3, result.getAccepted());
+        assertEquals(2, result.getRejected());
+        assertNull(result.getError());
+        assertEquals("rejected", result.getResults().get(1).getStatus());
+        assertEquals(3, result.getResults().get(3).getIndex());
+        ArgumentCaptor<List<OutboxEvent>> chunkCaptor = ArgumentCaptor.forClass(List.class);
+        verify(outboxEventRepository, times(2)).saveAll(chunkCaptor.capture());
+        JournalEntry first = new JournalEventCodec().decode(chunkCaptor.getAllValues().get(0).get(0).getPayload());
+        assertEquals("one", first.getContent());
+        assertEquals(new Date(1728396779000L), first.getCreatedAt());
+    }
+
+    @Test
+    void addEntries_ShouldKeepEntriesReadBeforeMalformedNdjson() throws IOException {
+        String body = "{\"content\":\"one\"}\n{\"content\":\"two\"}\n{\"content\": oops}\n{\"content\":\"four\"}\n";
+
+        JournalBatchResult result = userService.addEntries("admin", stream(body));
+
+        assertEquals(2, result.getAccepted());
+        assertTrue(result.getError().startsWith("Malformed JSON after entry 2"));
+        verify(outboxEventRepository, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    void addEntries_ShouldRejectEntryWithInvalidFieldAndReadTheRest() throws IOException {
+        String body = "[{\"content\":\"one\"},{\"content\":\"two\",\"createdAt\":\"yesterday\"},{\"content\":\"three\"}]";
+
+        JournalBatchResult result = userService.addEntries("admin", stream(body));
+
+        assertEquals(2, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertNull(result.getError());
+        assertEquals(1, result.getResults().get(1).getIndex());
+        assertEquals("rejected", result.getResults().get(1).getStatus());
+        assertTrue(result.getResults().get(1).getError().contains("yesterday"));
+        assertEquals("accepted", result.getResults().get(2).getStatus());
+    }
+
     @Test
     void authenticateUser_ShouldReturnToken() {
         when(userRepository.findByUsername("admin")).thenReturn(Optional.of(user));
         when(passwordEncoder.matches("password", user.getPassword())).thenReturn(true);
 
-        String token = userService.authenticateUser("admin", "password");
+        AuthResponse tokens = userService.authenticateUser("admin", "password");
 
-        assertNotNull(token);
+        assertNotNull(tokens.getAccessToken());
+        assertNotNull(tokens.getRefreshToken());
+        assertEquals(3600, tokens.getExpiresIn());
         verify(userRepository, times(1)).findByUsername("admin");
         verify(passwordEncoder, times(1)).matches("password", user.getPassword());
+        ArgumentCaptor<RefreshToken> tokenCaptor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(tokenCaptor.capture());
+        assertEquals(UserService.hashRefreshToken(tokens.getRefreshToken()), tokenCaptor.getValue().getTokenHash());
+        assertEquals(1L, tokenCaptor.getValue().getUserId());
+        assertEquals(1.0, meterRegistry.counter("auth.logins", "method", "password", "outcome", "success").count());
+    }
+
+    @Test
+    void refreshAccessToken_ShouldRotateTokenWithoutCheckingPassword() {
+        RefreshToken stored = new RefreshToken(UserService.hashRefreshToken("opaque"), 1L, new Date(System.currentTimeMillis() + 60000));
+        stored.setId(7L);
+        when(refreshTokenRepository.findByTokenHash(UserService.hashRefreshToken("opaque"))).thenReturn(Optional.of(stored));
+        when(refreshTokenRepository.revoke(7L)).thenReturn(1);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+
+        AuthResponse tokens = userService.refreshAccessToken("opaque");
+
+        assertNotNull(tokens.getAccessToken());
+        assertNotEquals("opaque", tokens.getRefreshToken());
+        verify(refreshTokenRepository).save(any(RefreshToken.class));
+        verifyNoInteractions(passwordEncoder);
+        assertEquals(1.0, meterRegistry.counter("auth.logins", "method", "refresh", "outcome", "success").count());
+    }
+
+    @Test
+    void refreshAccessToken_ShouldRejectTokenAlreadyUsedByConcurrentRefresh() {
+        RefreshToken stored = new RefreshToken(UserService.hashRefreshToken("opaque"), 1L, new Date(System.currentTimeMillis() + 60000));
+        stored.setId(7L);
+        when(refreshTokenRepository.findByTokenHash(anyString())).thenReturn(Optional.of(stored));
+        when(refreshTokenRepository.revoke(7L)).thenReturn(0);
+
+        Exception exception = assertThrows(RuntimeException.class, () -> userService.refreshAccessToken("opaque"));
+
+        assertEquals("Invalid refresh token", exception.getMessage());
+        verify(refreshTokenRepository, never()).save(any(RefreshToken.class));
+    }
+
+    @Test
+    void refreshAccessToken_ShouldRejectExpiredToken() {
+        RefreshToken stored = new RefreshToken(UserService.hashRefreshToken("opaque"), 1L, new Date(System.currentTimeMillis() - 1));
+        when(refreshTokenRepository.findByTokenHash(anyString())).thenReturn(Optional.of(stored));
+
+        assertThrows(RuntimeException.class, () -> userService.refreshAccessToken("opaque"));
+
+        verify(refreshTokenRepository, never()).revoke(any());
+        assertEquals(1.0, meterRegistry.counter("auth.logins", "method", "refresh", "outcome", "failure").count());
     }
 
     @Test
@@ -157,4 +322,22 @@ class UserServiceTest {
 
         assertEquals("Invalid password", exception.getMessage());
     }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void verifyPublished(String topic, String type, String key, String payload) {
+        OutboxEvent event = capturePublished();
+        assertEquals(topic, event.getTopic());
+        assertEquals(type, event.getEventType());
+        assertEquals(key, event.getEventKey());
+        assertEquals(payload, event.getPayload());
+    }
+
+    private OutboxEvent capturePublished() {
+        ArgumentCaptor<OutboxEvent> eventCaptor = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxEventRepository, times(1)).save(eventCaptor.capture());
+        return eventCaptor.getValue();
+    }
 }